@@ -26,110 +26,112 @@ import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Arrays;
 
 /**
  * Represents the calendar with an item per session by date.
  */
 final class CalendarAdapter extends BaseAdapter
 {
-    /** Sessions list. */
-    private final List<String> sessionsName = new ArrayList<>();
-    /** Sessions date. */
-    private final List<String> sessionsDate = new ArrayList<>();
-    private final List<String> days = new ArrayList<>();
-    /** Sessions on same day. */
-    private final Map<String, List<String>> multipleSessionSameDay = new HashMap<>();
-    /** Count for sessions on same day. */
-    private final Map<String, Integer> multipleSessionsSameDayCount = new HashMap<>();
-    /** Main sessions folder. */
-    private final String sessionsFolder;
+    /** Days text, by day number. */
+    private static final String[] DAYS = new String[32];
+
+    static
+    {
+        for (int day = 0; day < DAYS.length; day++)
+        {
+            DAYS[day] = day < 10 ? "0" + day : String.valueOf(day);
+        }
+    }
+
+    /** Sessions count per day slot (index is the day, from 1 to 31). */
+    private final int[] daySessions = new int[DAYS.length];
+    /** First cell index per day slot (index is the day, from 1 to 31). */
+    private final int[] dayFirstCell = new int[DAYS.length];
+    /** Sessions thumbnail. */
+    private final ThumbnailIndex thumbnails;
+    private final ThumbnailCache cache;
     private final Context context;
-    private final Calendar monthCalendar;
     private final InfoProvider detailProvider;
+    /** Session key per cell, most recent first. */
+    private int[] cells = new int[0];
+    /** Session data per cell. */
+    private SessionData[] cellsData = new SessionData[0];
 
     /**
      * Create calendar.
      *
      * @param context The context reference.
-     * @param monthCalendar The month calendar.
-     * @param sessionsFolder The sessions folder.
+     * @param thumbnails The sessions thumbnail.
+     * @param cache The thumbnails cache.
      * @param detailProvider The detail provider.
      */
-    CalendarAdapter(Context context, Calendar monthCalendar, String sessionsFolder, InfoProvider detailProvider)
+    CalendarAdapter(Context context, ThumbnailIndex thumbnails, ThumbnailCache cache, InfoProvider detailProvider)
     {
         super();
 
         this.context = context;
-        this.monthCalendar = monthCalendar;
-        this.sessionsFolder = sessionsFolder;
+        this.thumbnails = thumbnails;
+        this.cache = cache;
         this.detailProvider = detailProvider;
-        monthCalendar.set(Calendar.DAY_OF_MONTH, 1);
     }
 
     /**
-     * Set sessions to map to calendar.
+     * Set sessions to map to calendar. Cells are precomputed from day slots, most recent day first, and most recent
+     * session first for multiple sessions a day.
      *
-     * @param sessions The sessions set.
+     * @param month The month sessions.
      */
-    public void setSessions(Collection<String> sessions)
-    {
-        sessionsName.clear();
-        sessionsDate.clear();
-        multipleSessionsSameDayCount.clear();
-
-        sessions.forEach(this::handleSession);
-    }
-
-    private void handleSession(String session)
+    public void setSessions(SessionsMonth month)
     {
-        sessionsName.add(session);
-
-        String day = session.substring(session.indexOf('-', session.indexOf('-') + 1) + 1);
-
-        if (day.length() < 2) // Ensure day has two chars
+        final int count = month.size();
+        Arrays.fill(daySessions, 0);
+        for (int i = 0; i < count; i++)
         {
-            day = "0" + day;
-            sessionsDate.add(session);
+            daySessions[SessionKey.getDay(month.getKey(i))]++;
         }
-        else if (day.length() > 2) // Multiple session a day
+        int cell = 0;
+        for (int day = DAYS.length - 1; day > 0; day--)
         {
-            day = day.substring(0, day.indexOf('-'));
-
-            multipleSessionSameDay.computeIfAbsent(day, d -> new ArrayList<>()).add(session);
-            multipleSessionsSameDayCount.put(day, 1);
-            sessionsDate.add(session.substring(0, session.lastIndexOf('-')));
+            dayFirstCell[day] = cell;
+            cell += daySessions[day];
         }
-        else // Date with two chars
+
+        cells = new int[count];
+        cellsData = new SessionData[count];
+        for (int i = 0; i < count; i++) // Sorted by key, so by order for a same day
         {
-            sessionsDate.add(session);
+            final int key = month.getKey(i);
+            final int day = SessionKey.getDay(key);
+            final int index = dayFirstCell[day] + --daySessions[day];
+            cells[index] = key;
+            cellsData[index] = detailProvider.getInfo(key);
         }
-        days.add(day);
+        notifyDataSetChanged();
     }
 
     @Override
     public int getCount()
     {
-        return days.size();
+        return cells.length;
     }
 
     @Override
     public Object getItem(int position)
     {
-        return days.get(position);
+        return cellsData[position];
     }
 
     @Override
     public long getItemId(int position)
     {
-        return position;
+        return cells[position];
+    }
+
+    @Override
+    public boolean hasStableIds()
+    {
+        return true;
     }
 
     @Override
@@ -138,35 +140,13 @@ final class CalendarAdapter extends BaseAdapter
         final View view = getView(convertView, parent);
         final TextView dayView = view.findViewById(R.id.date);
 
-        // create day string for comparison
-        String day = days.get(days.size() - 1 - position);
+        final int session = cells[position];
+        dayView.setText(DAYS[SessionKey.getDay(session)]);
 
-        // disable empty days from the beginning
-        if (day.isEmpty())
-        {
-            dayView.setClickable(false);
-            dayView.setFocusable(false);
-        }
-        dayView.setText(day);
-
-        if (day.length() == 1)
-        {
-            day = "0" + day;
-        }
+        updateSession(view, session, dayView);
+        updateScore(view, cellsData[position]);
+        updateWaveHeight(view, cellsData[position]);
 
-        final String sessionDate = monthCalendar.get(Calendar.YEAR) + "-" + getMonth() + "-" + day;
-
-        if (sessionsDate.contains(sessionDate))
-        {
-            final String session = getSession(day, sessionDate);
-            updateSession(view, session, dayView);
-            updateScore(view, session);
-            updateWaveHeight(view, session);
-        }
-        else
-        {
-            view.findViewById(R.id.date_icon).setVisibility(View.INVISIBLE);
-        }
         return view;
     }
 
@@ -184,134 +164,60 @@ final class CalendarAdapter extends BaseAdapter
         return convertView;
     }
 
-    /**
-     * Get month from calendar formatted with two chars.
-     *
-     * @return The month with two chars.
-     */
-    private String getMonth()
-    {
-        final String month = String.valueOf(monthCalendar.get(Calendar.MONTH) + 1);
-        if (month.length() == 1)
-        {
-            return "0" + month;
-        }
-        return month;
-    }
-
-    /**
-     * Get session name from date. Handles multiple sessions a session automatically.
-     *
-     * @param sessionDate The session date.
-     * @return The session full name.
-     */
-    private String getSession(String day, String sessionDate)
-    {
-        if (multipleSessionSameDay.containsKey(day))
-        {
-            final List<String> multiDays = multipleSessionSameDay.get(day);
-            if (multiDays != null)
-            {
-                Integer index = Optional.ofNullable(multipleSessionsSameDayCount.get(day)).orElse(0);
-                if (index >= multiDays.size())
-                {
-                    index = 0;
-                }
-                final String sessionMultiDay = multiDays.get(index);
-                final int id = (index + 1) % multiDays.size();
-                multipleSessionsSameDayCount.put(day, id);
-                return sessionMultiDay;
-            }
-        }
-        return sessionsName.get(sessionsDate.indexOf(sessionDate));
-    }
-
     /**
      * Update session day view with image thumbnail.
      *
      * @param view The view reference.
-     * @param session The session name.
+     * @param session The session key.
      * @param dayView The day text.
      */
-    private void updateSession(View view, String session, TextView dayView)
+    private void updateSession(View view, int session, TextView dayView)
     {
-        ((TextView) view.findViewById(R.id.name)).setText(session);
-
         final ImageView sessionImage = view.findViewById(R.id.date_icon);
         sessionImage.setVisibility(View.VISIBLE);
         dayView.setTextColor(sessionImage.getContext().getColor(android.R.color.white));
 
-        getSessionThumbnail(session).ifPresent(image -> Glide.with(sessionImage.getContext())
-                                                             .load(image)
-                                                             .thumbnail(0.25f)
-                                                             .into(sessionImage));
-    }
-
-    /**
-     * Get session thumbnail (first image or the one defined in thumb.txt).
-     *
-     * @param session The session name.
-     * @return The image thumbnail.
-     */
-    private Optional<String> getSessionThumbnail(String session)
-    {
-        final File folder = new File(sessionsFolder, Util.getSessionFolder(session));
-        final Optional<String> thumbnail = Util.readThumbnailFile(folder);
-        if (thumbnail.isPresent())
+        final MediaManifest.Media media = thumbnails.get(session);
+        final String image = media != null ? cache.get(media, ThumbnailCache.SMALL) : null;
+        if (image != null)
+        {
+            Glide.with(sessionImage.getContext()).load(image).apply(SurfGlideModule.THUMBNAIL).into(sessionImage);
+        }
+        else
         {
-            return thumbnail;
+            Glide.with(sessionImage.getContext()).clear(sessionImage);
         }
-        return Util.getFirstImage(folder);
     }
 
     /**
      * Update session score (star visible if top score).
      *
      * @param view The view reference.
-     * @param session The session name.
+     * @param data The session data.
      */
-    private void updateScore(View view, String session)
+    private static void updateScore(View view, SessionData data)
     {
-        final int score = Integer.parseInt(detailProvider.getInfo(session).getS());
-        if (score > 1)
-        {
-            setVisible(view, R.id.score);
-        }
+        setVisible(view, R.id.score, data.getS() > 1);
     }
 
     /**
      * Update session height bar.
      *
      * @param view The view reference.
-     * @param session The session name.
+     * @param data The session data.
      */
-    private void updateWaveHeight(View view, String session)
+    private static void updateWaveHeight(View view, SessionData data)
     {
-        final double height = Double.parseDouble(detailProvider.getInfo(session).getHmax());
-        if (height > 0.0)
-        {
-            setVisible(view, R.id.height1);
-        }
-        if (height > 0.5)
-        {
-            setVisible(view, R.id.height2);
-        }
-        if (height > 0.9)
-        {
-            setVisible(view, R.id.height3);
-        }
-        if (height > 1.1)
-        {
-            setVisible(view, R.id.height4);
-        }
-        if (height > 1.3)
-        {
-            setVisible(view, R.id.height5);
-        }
+        final double height = data.getHmax();
+        setVisible(view, R.id.height1, height > 0.0);
+        setVisible(view, R.id.height2, height > 0.5);
+        setVisible(view, R.id.height3, height > 0.9);
+        setVisible(view, R.id.height4, height > 1.1);
+        setVisible(view, R.id.height5, height > 1.3);
     }
 
-    private static void setVisible(View view, int r)
+    private static void setVisible(View view, int r, boolean visible)
     {
-        view.findViewById(r).setVisibility(View.VISIBLE);
+        view.findViewById(r).setVisibility(visible ? View.VISIBLE : View.INVISIBLE);
     }
 }
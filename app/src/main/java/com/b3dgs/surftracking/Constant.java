@@ -24,6 +24,11 @@ public final class Constant
     public static final String LOG = "SURF_TRACKING";
     public static final String FILE_SESSIONS = "sessions.xml";
     public static final String THUMBNAIL_FILE = "thumb.txt";
+    public static final String FILE_SNAPSHOT = "sessions.snapshot";
+    public static final String FILE_YEARS = "sessions.years";
+    public static final String FILE_THUMBNAILS = "thumbnails.index";
+    public static final String FILE_GEO = "geo.index";
+    public static final String FOLDER_THUMBNAILS = "thumbnails";
     public static final String DEFAULT_SESSIONS_FOLDER = "/storage/0000-0000/Surf/";
     public static final int[] SECTIONS = {R.string.section1, R.string.section2};
     /** Sessions view ID. */
@@ -21,7 +21,6 @@ import android.content.Intent;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.media.ExifInterface;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -31,34 +30,36 @@ import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.List;
-import java.util.Locale;
 import java.util.function.Consumer;
 
 /**
  * Represents the session detail information.
  */
-final class DetailAdapter extends ArrayAdapter<String> implements SessionsFolderListener, SessionSelectionListener
+final class DetailAdapter extends ArrayAdapter<String> implements SessionSelectionListener
 {
     private static final String APP_MAPS = "com.google.android.apps.maps";
 
     private final Consumer<Intent> activityStarter;
-    private String sessionsFolder;
+    private final GeoIndex geo;
 
     /**
      * Create adapter.
      *
      * @param activityStarter The activity starter function.
+     * @param geo The sessions location index.
      * @param context The context reference.
      * @param items The handled items.
      */
-    DetailAdapter(Consumer<Intent> activityStarter, @NonNull Context context, List<String> items)
+    DetailAdapter(Consumer<Intent> activityStarter,
+                  GeoIndex geo,
+                  @NonNull Context context,
+                  List<String> items)
     {
         super(context, 0, items);
 
         this.activityStarter = activityStarter;
+        this.geo = geo;
     }
 
     @NonNull
@@ -70,7 +71,7 @@ final class DetailAdapter extends ArrayAdapter<String> implements SessionsFolder
         if (item != null)
         {
             final ImageView icon = view.findViewById(R.id.detail_icon);
-            Glide.with(getContext()).load(getIcon(position, item)).into(icon);
+            Glide.with(getContext()).load(getIcon(position, item)).apply(SurfGlideModule.ICON).into(icon);
 
             final TextView value = view.findViewById(R.id.detail_value);
             updateDetail(position, value, item, icon);
@@ -156,16 +157,16 @@ final class DetailAdapter extends ArrayAdapter<String> implements SessionsFolder
         if (position == 5) // GPS
         {
             value.setVisibility(View.INVISIBLE);
-            icon.setOnClickListener(v -> startMaps(value.getText().toString()));
+            icon.setOnClickListener(v -> startMaps(SessionKey.parse(value.getText())));
         }
     }
 
     /**
      * Start maps app with current GPS location.
      *
-     * @param session The session name.
+     * @param session The session key.
      */
-    private void startMaps(String session)
+    private void startMaps(int session)
     {
         final String gps = getGps(session);
         final Uri gmmIntentUri = Uri.parse("geo:" + gps + "?q=" + gps + "Session");
@@ -177,43 +178,21 @@ final class DetailAdapter extends ArrayAdapter<String> implements SessionsFolder
     /**
      * Get session GPS location.
      *
-     * @param session The session name.
+     * @param session The session key.
      * @return The associated GPS.
      */
-    private String getGps(String session)
+    private String getGps(int session)
     {
-        final File folder = new File(sessionsFolder, Util.getSessionFolder(session));
-        try
+        final GeoIndex.Location location = geo.get(session);
+        if (location != null)
         {
-            final File[] files = folder.listFiles();
-            if (files != null)
-            {
-                for (File file : files)
-                {
-                    if (file.getName().toLowerCase(Locale.ENGLISH).endsWith(".jpg"))
-                    {
-                        final ExifInterface exif = new ExifInterface(file.getAbsolutePath());
-                        double[] latLong = exif.getLatLong();
-                        return latLong[0] + "," + latLong[1];
-                    }
-                }
-            }
-        }
-        catch (IOException e)
-        {
-            Util.log("Unable to set GPS !", e);
+            return location.toCoordinates();
         }
         return "0,0";
     }
 
     @Override
-    public void onSessionsFolderSelected(String sessionsFolder)
-    {
-        this.sessionsFolder = sessionsFolder;
-    }
-
-    @Override
-    public void onSessionSelected(String root, String session)
+    public void onSessionSelected(String root, int session)
     {
         notifyDataSetChanged();
     }
@@ -0,0 +1,580 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Minimal JPEG EXIF reader, extracting GPS location, capture time, orientation and embedded thumbnail location.
+ * <p>
+ * Only the first EXIF APP1 segment is read, into a buffer reused between files. Tags are decoded in place without
+ * allocation, so one reader can scan many files from a bulk indexer. Not thread safe. Does not depend on Android.
+ * </p>
+ */
+final class ExifReader
+{
+    /** Unknown value. */
+    static final long NONE = -1L;
+    /** Default orientation (not rotated). */
+    static final int ORIENTATION_NORMAL = 1;
+
+    private static final int MARKER_SOI = 0xFFD8;
+    private static final int MARKER_APP1 = 0xFFE1;
+    private static final int MARKER_SOS = 0xFFDA;
+    private static final int MARKER_EOI = 0xFFD9;
+    private static final int MARKER_PREFIX = 0xFF00;
+    private static final int SEGMENT_MAX = 0xFFFF;
+    /** TIFF header position in segment, after "Exif\0\0". */
+    private static final int TIFF = 6;
+    private static final int TIFF_MAGIC = 42;
+    private static final int ENTRY_SIZE = 12;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    private static final int TAG_GPS_LATITUDE = 0x0002;
+    private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    private static final int TAG_GPS_LONGITUDE = 0x0004;
+    private static final int TYPE_SHORT = 3;
+    private static final int DATE_LENGTH = 19;
+    /** Maximum embedded thumbnail length. */
+    private static final int THUMBNAIL_MAX = 64 * 1024;
+
+    private static final int IFD_0 = 0;
+    private static final int IFD_1 = 1;
+    private static final int IFD_EXIF = 2;
+    private static final int IFD_GPS = 3;
+
+    /**
+     * Get clockwise rotation to apply from EXIF orientation. Mirrored orientations are not supported.
+     *
+     * @param orientation The EXIF orientation.
+     * @return The rotation in degrees.
+     */
+    static int getRotation(int orientation)
+    {
+        switch (orientation)
+        {
+            case 3:
+                return 180;
+            case 6:
+                return 90;
+            case 8:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Get days since epoch of civil date.
+     *
+     * @param year The year.
+     * @param month The month (from 1 to 12).
+     * @param day The day (from 1 to 31).
+     * @return The days since 1970-01-01.
+     */
+    private static long toEpochDay(int year, int month, int day)
+    {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+
+    private final ByteBuffer marker = ByteBuffer.allocate(4);
+    private final ByteBuffer segment = ByteBuffer.allocate(SEGMENT_MAX);
+    private long segmentPosition;
+    private boolean hasLatitude;
+    private boolean hasLongitude;
+    private double latitude;
+    private double longitude;
+    private long captureTime;
+    private int orientation;
+    private long thumbnailOffset;
+    private int thumbnailLength;
+
+    /**
+     * Create reader.
+     */
+    ExifReader()
+    {
+        super();
+
+        reset();
+    }
+
+    /**
+     * Read image EXIF.
+     *
+     * @param path The image path.
+     * @return <code>true</code> if EXIF found, <code>false</code> else.
+     * @throws IOException If unable to read file.
+     */
+    boolean read(String path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+        {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Read image EXIF.
+     *
+     * @param channel The image channel.
+     * @return <code>true</code> if EXIF found, <code>false</code> else.
+     * @throws IOException If unable to read file.
+     */
+    boolean read(FileChannel channel) throws IOException
+    {
+        reset();
+
+        long position = 0L;
+        if (!readMarker(channel, position) || (marker.getShort(0) & 0xFFFF) != MARKER_SOI)
+        {
+            return false;
+        }
+        position += 2;
+        while (readMarker(channel, position))
+        {
+            final int type = marker.getShort(0) & 0xFFFF;
+            final int length = (marker.getShort(2) & 0xFFFF) - 2;
+            if ((type & MARKER_PREFIX) != MARKER_PREFIX || type == MARKER_SOS || type == MARKER_EOI || length < 0)
+            {
+                return false;
+            }
+            position += 4;
+            if (type == MARKER_APP1 && readExif(channel, position, length))
+            {
+                return parse();
+            }
+            position += length;
+        }
+        return false;
+    }
+
+    /**
+     * Check if GPS location has been read.
+     *
+     * @return <code>true</code> if located, <code>false</code> else.
+     */
+    boolean isLocated()
+    {
+        return hasLatitude && hasLongitude;
+    }
+
+    /**
+     * Get latitude.
+     *
+     * @return The latitude in degrees (negative for south).
+     */
+    double getLatitude()
+    {
+        return latitude;
+    }
+
+    /**
+     * Get longitude.
+     *
+     * @return The longitude in degrees (negative for west).
+     */
+    double getLongitude()
+    {
+        return longitude;
+    }
+
+    /**
+     * Get capture time (DateTimeOriginal). Camera local time, without time zone, expressed as if it was UTC.
+     *
+     * @return The capture time in milliseconds, {@link #NONE} if unknown.
+     */
+    long getCaptureTime()
+    {
+        return captureTime;
+    }
+
+    /**
+     * Get orientation.
+     *
+     * @return The EXIF orientation, {@link #ORIENTATION_NORMAL} if undefined.
+     */
+    int getOrientation()
+    {
+        return orientation;
+    }
+
+    /**
+     * Get embedded thumbnail position.
+     *
+     * @return The thumbnail offset in file, {@link #NONE} if none or outside EXIF segment.
+     */
+    long getThumbnailOffset()
+    {
+        return thumbnailOffset;
+    }
+
+    /**
+     * Get embedded thumbnail length.
+     *
+     * @return The thumbnail length in bytes, <code>0</code> if none.
+     */
+    int getThumbnailLength()
+    {
+        return thumbnailLength;
+    }
+
+    private void reset()
+    {
+        hasLatitude = false;
+        hasLongitude = false;
+        latitude = 0.0;
+        longitude = 0.0;
+        captureTime = NONE;
+        orientation = ORIENTATION_NORMAL;
+        thumbnailOffset = NONE;
+        thumbnailLength = 0;
+    }
+
+    /**
+     * Read segment marker and length.
+     *
+     * @param channel The image channel.
+     * @param position The marker position.
+     * @return <code>true</code> if read, <code>false</code> if end of file.
+     * @throws IOException If unable to read file.
+     */
+    private boolean readMarker(FileChannel channel, long position) throws IOException
+    {
+        marker.clear();
+        return readFully(channel, marker, position);
+    }
+
+    /**
+     * Read segment and check EXIF header.
+     *
+     * @param channel The image channel.
+     * @param position The segment data position.
+     * @param length The segment data length.
+     * @return <code>true</code> if EXIF segment, <code>false</code> else.
+     * @throws IOException If unable to read file.
+     */
+    private boolean readExif(FileChannel channel, long position, int length) throws IOException
+    {
+        if (length < TIFF + 8)
+        {
+            return false;
+        }
+        segment.clear();
+        segment.order(ByteOrder.BIG_ENDIAN);
+        segment.limit(length);
+        if (!readFully(channel, segment, position))
+        {
+            return false;
+        }
+        segmentPosition = position;
+        return segment.get(0) == 'E'
+               && segment.get(1) == 'x'
+               && segment.get(2) == 'i'
+               && segment.get(3) == 'f'
+               && segment.get(4) == 0
+               && segment.get(5) == 0;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        long current = position;
+        while (buffer.hasRemaining())
+        {
+            final int read = channel.read(buffer, current);
+            if (read < 0)
+            {
+                return false;
+            }
+            current += read;
+        }
+        return true;
+    }
+
+    /**
+     * Parse TIFF structure.
+     *
+     * @return <code>true</code> if valid, <code>false</code> else.
+     */
+    private boolean parse()
+    {
+        final byte order = segment.get(TIFF);
+        if (order == 'I')
+        {
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        else if (order != 'M')
+        {
+            return false;
+        }
+        if (getShort(2) != TIFF_MAGIC)
+        {
+            return false;
+        }
+        final int next = parseIfd(getInt(4), IFD_0);
+        if (next > 0)
+        {
+            parseIfd(next, IFD_1);
+            checkThumbnail();
+        }
+        return true;
+    }
+
+    /**
+     * Parse image file directory.
+     *
+     * @param offset The directory offset from TIFF header.
+     * @param ifd The directory type.
+     * @return The next directory offset, <code>0</code> if none.
+     */
+    private int parseIfd(int offset, int ifd)
+    {
+        if (!contains(offset, 2))
+        {
+            return 0;
+        }
+        final int count = getShort(offset);
+        if (!contains(offset + 2, count * ENTRY_SIZE + 4))
+        {
+            return 0;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            parseEntry(offset + 2 + i * ENTRY_SIZE, ifd);
+        }
+        return getInt(offset + 2 + count * ENTRY_SIZE);
+    }
+
+    /**
+     * Parse directory entry.
+     *
+     * @param entry The entry offset from TIFF header.
+     * @param ifd The directory type.
+     */
+    private void parseEntry(int entry, int ifd)
+    {
+        final int tag = getShort(entry);
+        final int value = entry + 8;
+        switch (ifd)
+        {
+            case IFD_0:
+                if (tag == TAG_ORIENTATION)
+                {
+                    orientation = getShort(value);
+                }
+                else if (tag == TAG_EXIF_IFD)
+                {
+                    parseIfd(getInt(value), IFD_EXIF);
+                }
+                else if (tag == TAG_GPS_IFD)
+                {
+                    parseIfd(getInt(value), IFD_GPS);
+                }
+                break;
+            case IFD_1:
+                if (tag == TAG_THUMBNAIL_OFFSET)
+                {
+                    thumbnailOffset = getUnsigned(entry);
+                }
+                else if (tag == TAG_THUMBNAIL_LENGTH)
+                {
+                    thumbnailLength = (int) getUnsigned(entry);
+                }
+                break;
+            case IFD_EXIF:
+                if (tag == TAG_DATE_TIME_ORIGINAL)
+                {
+                    captureTime = parseDate(getInt(value));
+                }
+                break;
+            case IFD_GPS:
+                parseGps(tag, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown directory: " + ifd);
+        }
+    }
+
+    /**
+     * Check embedded thumbnail lies inside EXIF segment and is not too large, and locate it in file. Thumbnail is
+     * ignored else.
+     */
+    private void checkThumbnail()
+    {
+        if (thumbnailOffset == NONE
+            || thumbnailLength <= 0
+            || thumbnailLength > THUMBNAIL_MAX
+            || TIFF + thumbnailOffset + thumbnailLength > segment.limit())
+        {
+            thumbnailOffset = NONE;
+            thumbnailLength = 0;
+        }
+        else
+        {
+            thumbnailOffset += segmentPosition + TIFF;
+        }
+    }
+
+    /**
+     * Parse GPS entry.
+     *
+     * @param tag The GPS tag.
+     * @param value The entry value offset from TIFF header.
+     */
+    private void parseGps(int tag, int value)
+    {
+        switch (tag)
+        {
+            case TAG_GPS_LATITUDE_REF:
+                if (segment.get(TIFF + value) == 'S')
+                {
+                    latitude = -Math.abs(latitude);
+                }
+                break;
+            case TAG_GPS_LATITUDE:
+                hasLatitude = contains(getInt(value), 24);
+                if (hasLatitude)
+                {
+                    latitude = Math.copySign(parseDegrees(getInt(value)), latitude);
+                }
+                break;
+            case TAG_GPS_LONGITUDE_REF:
+                if (segment.get(TIFF + value) == 'W')
+                {
+                    longitude = -Math.abs(longitude);
+                }
+                break;
+            case TAG_GPS_LONGITUDE:
+                hasLongitude = contains(getInt(value), 24);
+                if (hasLongitude)
+                {
+                    longitude = Math.copySign(parseDegrees(getInt(value)), longitude);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Parse degrees, minutes, seconds rationals.
+     *
+     * @param offset The rationals offset from TIFF header.
+     * @return The degrees.
+     */
+    private double parseDegrees(int offset)
+    {
+        return getRational(offset) + getRational(offset + 8) / 60.0 + getRational(offset + 16) / 3600.0;
+    }
+
+    private double getRational(int offset)
+    {
+        final long denominator = getInt(offset + 4) & 0xFFFFFFFFL;
+        if (denominator == 0L)
+        {
+            return 0.0;
+        }
+        return (getInt(offset) & 0xFFFFFFFFL) / (double) denominator;
+    }
+
+    /**
+     * Parse date ("yyyy:MM:dd HH:mm:ss").
+     *
+     * @param offset The date offset from TIFF header.
+     * @return The date in milliseconds, {@link #NONE} if invalid.
+     */
+    private long parseDate(int offset)
+    {
+        if (!contains(offset, DATE_LENGTH))
+        {
+            return NONE;
+        }
+        final int year = getDigits(offset, 4);
+        final int month = getDigits(offset + 5, 2);
+        final int day = getDigits(offset + 8, 2);
+        final int hour = getDigits(offset + 11, 2);
+        final int minute = getDigits(offset + 14, 2);
+        final int second = getDigits(offset + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || minute < 0 || second < 0)
+        {
+            return NONE;
+        }
+        final long seconds = toEpochDay(year, month, day) * 86_400L + hour * 3_600L + minute * 60L + second;
+        return seconds * 1_000L;
+    }
+
+    private int getDigits(int offset, int count)
+    {
+        int value = 0;
+        for (int i = 0; i < count; i++)
+        {
+            final int c = segment.get(TIFF + offset + i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Get entry numeric value, stored as short or long.
+     *
+     * @param entry The entry offset from TIFF header.
+     * @return The unsigned value.
+     */
+    private long getUnsigned(int entry)
+    {
+        if (getShort(entry + 2) == TYPE_SHORT)
+        {
+            return getShort(entry + 8);
+        }
+        return getInt(entry + 8) & 0xFFFFFFFFL;
+    }
+
+    private boolean contains(int offset, int length)
+    {
+        return offset >= 0 && length >= 0 && TIFF + (long) offset + length <= segment.limit();
+    }
+
+    private int getShort(int offset)
+    {
+        return segment.getShort(TIFF + offset) & 0xFFFF;
+    }
+
+    private int getInt(int offset)
+    {
+        return segment.getInt(TIFF + offset);
+    }
+}
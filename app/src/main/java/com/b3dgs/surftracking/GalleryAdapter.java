@@ -17,31 +17,69 @@
 package com.b3dgs.surftracking;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
+import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Represents the gallery inside a session.
+ * <p>
+ * Media lists are diffed on a background thread, items are identified by their path.
+ * </p>
  */
-final class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.MyViewHolder>
+final class GalleryAdapter extends ListAdapter<MediaManifest.Media, GalleryAdapter.MyViewHolder>
 {
-    private final ArrayList<String> images = new ArrayList<>();
+    private static final DiffUtil.ItemCallback<MediaManifest.Media> DIFF
+            = new DiffUtil.ItemCallback<MediaManifest.Media>()
+    {
+        @Override
+        public boolean areItemsTheSame(MediaManifest.Media oldItem, MediaManifest.Media newItem)
+        {
+            return oldItem.id == newItem.id && oldItem.path.equals(newItem.path);
+        }
+
+        @Override
+        public boolean areContentsTheSame(MediaManifest.Media oldItem, MediaManifest.Media newItem)
+        {
+            return oldItem.size == newItem.size && oldItem.modified == newItem.modified;
+        }
+    };
+
+    /** Gallery columns. */
+    static final int COLUMNS = 3;
+    /** Bind payload when only thumbnail changed. */
+    private static final Object PAYLOAD_THUMBNAIL = new Object();
+
     private final Context context;
+    private final ThumbnailCache cache;
+    private final RequestOptions options;
+    private final int cellSize;
+    /** Bound holders waiting for their thumbnail. */
+    private final Collection<MyViewHolder> waiting = new HashSet<>();
 
     static class MyViewHolder extends RecyclerView.ViewHolder
     {
         final ImageView thumbnail;
         final ImageView play;
+        final TextView duration;
 
         MyViewHolder(View view)
         {
@@ -49,40 +87,113 @@ final class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.MyViewHol
 
             thumbnail = view.findViewById(R.id.thumbnail);
             play = view.findViewById(R.id.play);
+            duration = view.findViewById(R.id.duration);
         }
     }
 
+    /**
+     * Get gallery thumbnail fixed size, from screen width.
+     *
+     * @param context The context reference.
+     * @return The thumbnail size in pixels.
+     */
+    static int getCellSize(Context context)
+    {
+        return context.getResources().getDisplayMetrics().widthPixels / COLUMNS;
+    }
+
+    /**
+     * Create gallery thumbnail request options. Requests using the same size share memory cache entries.
+     *
+     * @param cellSize The thumbnail size in pixels.
+     * @return The request options.
+     */
+    static RequestOptions createOptions(int cellSize)
+    {
+        return new RequestOptions().apply(SurfGlideModule.THUMBNAIL).override(cellSize).centerCrop();
+    }
+
     /**
      * Create adapter.
      *
      * @param context The context reference.
+     * @param cache The thumbnails cache.
+     * @param cellSize The fixed thumbnail size in pixels.
      */
-    GalleryAdapter(Context context)
+    GalleryAdapter(Context context, ThumbnailCache cache, int cellSize)
     {
-        super();
+        super(DIFF);
 
         this.context = context;
+        this.cache = cache;
+        this.cellSize = cellSize;
+        options = createOptions(cellSize);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Get displayed media.
+     *
+     * @param position The media position.
+     * @return The media.
+     */
+    MediaManifest.Media get(int position)
+    {
+        return getItem(position);
     }
 
     /**
-     * Set images.
+     * Update bound items whose thumbnail became available. Must be called from UI thread when cache has been updated.
+     */
+    void onCacheUpdated()
+    {
+        final Iterator<MyViewHolder> iterator = waiting.iterator();
+        while (iterator.hasNext())
+        {
+            final int position = iterator.next().getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION)
+            {
+                iterator.remove();
+            }
+            else if (cache.isCached(getItem(position), ThumbnailCache.MEDIUM))
+            {
+                iterator.remove();
+                notifyItemChanged(position, PAYLOAD_THUMBNAIL);
+            }
+        }
+    }
+
+    /**
+     * Preload item thumbnail, as it will be bound.
      *
-     * @param data The new data.
+     * @param position The media position.
+     * @return The preload target, <code>null</code> if thumbnail is not yet available.
      */
-    void setImages(List<String> data)
+    Target<?> preload(int position)
     {
-        images.clear();
-        images.addAll(data);
+        final String thumbnail = cache.get(getItem(position), ThumbnailCache.MEDIUM);
+        if (thumbnail == null)
+        {
+            return null;
+        }
+        return request(thumbnail).preload(cellSize, cellSize);
     }
 
     /**
-     * Get current data.
+     * Create thumbnail request, at fixed cell size.
      *
-     * @return The current data.
+     * @param thumbnail The thumbnail path.
+     * @return The request.
      */
-    ArrayList<String> getImages()
+    private RequestBuilder<Drawable> request(String thumbnail)
     {
-        return images;
+        return Glide.with(context).load(thumbnail).apply(options);
+    }
+
+    @Override
+    public long getItemId(int position)
+    {
+        return getItem(position).id;
     }
 
     @NonNull
@@ -96,22 +207,82 @@ final class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.MyViewHol
     @Override
     public void onBindViewHolder(@NonNull MyViewHolder holder, int position)
     {
-        final String image = images.get(position);
-        Glide.with(context).load(image).thumbnail(1.0f).into(holder.thumbnail);
+        final MediaManifest.Media entry = getItem(position);
+        updateThumbnail(holder, entry);
 
-        if (image.toLowerCase(Locale.ENGLISH).endsWith(GalleryView.EXTENSION_VIDEO))
+        if (entry.isVideo())
         {
             holder.play.setVisibility(View.VISIBLE);
+            updateDuration(holder.duration, cache.getDuration(entry));
         }
         else
         {
             holder.play.setVisibility(View.INVISIBLE);
+            holder.duration.setVisibility(View.INVISIBLE);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MyViewHolder holder, int position, @NonNull List<Object> payloads)
+    {
+        if (payloads.contains(PAYLOAD_THUMBNAIL))
+        {
+            final MediaManifest.Media entry = getItem(position);
+            updateThumbnail(holder, entry);
+            if (entry.isVideo())
+            {
+                updateDuration(holder.duration, cache.getDuration(entry));
+            }
+        }
+        else
+        {
+            onBindViewHolder(holder, position);
         }
     }
 
     @Override
-    public int getItemCount()
+    public void onViewRecycled(@NonNull MyViewHolder holder)
     {
-        return images.size();
+        waiting.remove(holder);
+    }
+
+    /**
+     * Update thumbnail image, holder waiting for it if not yet available.
+     *
+     * @param holder The item holder.
+     * @param entry The item media.
+     */
+    private void updateThumbnail(MyViewHolder holder, MediaManifest.Media entry)
+    {
+        final String thumbnail = cache.get(entry, ThumbnailCache.MEDIUM);
+        if (thumbnail != null)
+        {
+            waiting.remove(holder);
+            request(thumbnail).into(holder.thumbnail);
+        }
+        else
+        {
+            waiting.add(holder);
+            Glide.with(context).clear(holder.thumbnail);
+        }
+    }
+
+    /**
+     * Update video duration text.
+     *
+     * @param view The duration view.
+     * @param duration The duration in milliseconds, negative if unknown.
+     */
+    private static void updateDuration(TextView view, long duration)
+    {
+        if (duration < 0L)
+        {
+            view.setVisibility(View.INVISIBLE);
+        }
+        else
+        {
+            view.setText(DateUtils.formatElapsedTime(duration / 1_000L));
+            view.setVisibility(View.VISIBLE);
+        }
     }
 }
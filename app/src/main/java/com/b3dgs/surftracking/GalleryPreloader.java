@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.Arrays;
+
+/**
+ * Preload gallery thumbnails of the next rows in scroll direction, before they come on screen.
+ * <p>
+ * Requests use the adapter fixed cell size, so they are the ones bound later and hit the memory cache. Preload targets
+ * are recycled in a ring, the oldest one being cleared when a new row is preloaded.
+ * </p>
+ */
+final class GalleryPreloader extends RecyclerView.OnScrollListener
+{
+    private final RequestManager glide;
+    private final GalleryAdapter adapter;
+    private final GridLayoutManager layout;
+    private final Target<?>[] targets;
+    private final int[] positions;
+
+    /**
+     * Create preloader.
+     *
+     * @param glide The request manager.
+     * @param adapter The gallery adapter.
+     * @param layout The gallery layout.
+     * @param rows The number of rows to preload.
+     */
+    GalleryPreloader(RequestManager glide, GalleryAdapter adapter, GridLayoutManager layout, int rows)
+    {
+        super();
+
+        this.glide = glide;
+        this.adapter = adapter;
+        this.layout = layout;
+        targets = new Target<?>[rows * layout.getSpanCount()];
+        positions = new int[targets.length];
+        Arrays.fill(positions, RecyclerView.NO_POSITION);
+    }
+
+    /**
+     * Cancel all preloads, when displayed media changed.
+     */
+    void reset()
+    {
+        for (int i = 0; i < targets.length; i++)
+        {
+            if (targets[i] != null)
+            {
+                glide.clear(targets[i]);
+                targets[i] = null;
+            }
+            positions[i] = RecyclerView.NO_POSITION;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy)
+    {
+        final int first = layout.findFirstVisibleItemPosition();
+        final int last = layout.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION)
+        {
+            return;
+        }
+        if (dy < 0)
+        {
+            final int end = Math.max(0, first - targets.length);
+            for (int position = first - 1; position >= end; position--)
+            {
+                preload(position);
+            }
+        }
+        else
+        {
+            final int end = Math.min(adapter.getItemCount(), last + 1 + targets.length);
+            for (int position = last + 1; position < end; position++)
+            {
+                preload(position);
+            }
+        }
+    }
+
+    /**
+     * Preload item, if not already.
+     *
+     * @param position The item position.
+     */
+    private void preload(int position)
+    {
+        final int slot = position % targets.length;
+        if (positions[slot] == position)
+        {
+            return;
+        }
+        final Target<?> target = adapter.preload(position);
+        if (target != null)
+        {
+            if (targets[slot] != null)
+            {
+                glide.clear(targets[slot]);
+            }
+            targets[slot] = target;
+            positions[slot] = position;
+        }
+    }
+}
@@ -31,40 +31,50 @@ import android.view.ViewGroup;
 import android.widget.GridView;
 import android.widget.TextView;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Locale;
+import com.bumptech.glide.Glide;
 
 /**
  * Represents the gallery view inside the session.
  */
 final class GalleryView implements SessionSelectionListener
 {
-    public static final String ARG_IMAGES = "images";
+    public static final String ARG_SESSION = "session";
     public static final String ARG_POSITION = "position";
     public static final String EXTENSION_IMAGE = ".jpg";
     public static final String EXTENSION_VIDEO = ".mp4";
+    /** Rows preloaded in scroll direction. */
+    private static final int PRELOAD_ROWS = 3;
 
     private final FragmentManager fragmentManager;
     private final DetailAdapter detailAdapter;
+    private final MediaManifest manifest;
+    private final ThumbnailCache cache;
 
     private GalleryAdapter adapter;
+    private GalleryPreloader preloader;
     private View rootView;
     private TextView detailDate;
+    private int session = SessionKey.NONE;
 
     /**
      * Create detail view.
      *
      * @param fragmentManager The fragment manager reference.
      * @param detailAdapter The detail adapter reference.
+     * @param manifest The media manifest.
+     * @param cache The thumbnails cache.
      */
-    GalleryView(FragmentManager fragmentManager, DetailAdapter detailAdapter)
+    GalleryView(FragmentManager fragmentManager,
+                DetailAdapter detailAdapter,
+                MediaManifest manifest,
+                ThumbnailCache cache)
     {
         super();
 
         this.fragmentManager = fragmentManager;
         this.detailAdapter = detailAdapter;
+        this.manifest = manifest;
+        this.cache = cache;
     }
 
     /**
@@ -82,12 +92,15 @@ final class GalleryView implements SessionSelectionListener
             return rootView;
         }
         rootView = inflater.inflate(R.layout.fragment_gallery, container, false);
-        adapter = new GalleryAdapter(rootView.getContext());
+        adapter = new GalleryAdapter(rootView.getContext(), cache, GalleryAdapter.getCellSize(inflater.getContext()));
         detailDate = rootView.findViewById(R.id.detail_date);
 
         final RecyclerView recyclerView = rootView.findViewById(R.id.recycler_view);
-        recyclerView.setLayoutManager(new GridLayoutManager(inflater.getContext(), 3));
+        final GridLayoutManager layout = new GridLayoutManager(inflater.getContext(), GalleryAdapter.COLUMNS);
+        recyclerView.setLayoutManager(layout);
         recyclerView.setAdapter(adapter);
+        preloader = new GalleryPreloader(Glide.with(rootView.getContext()), adapter, layout, PRELOAD_ROWS);
+        recyclerView.addOnScrollListener(preloader);
         recyclerView.setItemAnimator(new DefaultItemAnimator());
 
         final ClickListener listener = new ClickListener()
@@ -109,20 +122,22 @@ final class GalleryView implements SessionSelectionListener
         final GridView detailGrid = rootView.findViewById(R.id.detailarea);
         detailGrid.setAdapter(detailAdapter);
 
+        manifest.addListener(() -> rootView.post(this::updateMedia));
+        cache.addListener(() -> rootView.post(adapter::onCacheUpdated));
+
         return rootView;
     }
 
     private void onClicked(Fragment parent, int position)
     {
-        final ArrayList<String> images = adapter.getImages();
-        final String file = images.get(position);
-        if (file.toLowerCase(Locale.ENGLISH).endsWith(EXTENSION_IMAGE))
+        final MediaManifest.Media media = adapter.get(position);
+        if (media.isVideo())
         {
-            openImage(position);
+            openVideo(parent, media.path);
         }
-        else if (file.toLowerCase(Locale.ENGLISH).endsWith(EXTENSION_VIDEO))
+        else
         {
-            openVideo(parent, file);
+            openImage(position);
         }
     }
 
@@ -131,7 +146,7 @@ final class GalleryView implements SessionSelectionListener
         final FragmentTransaction ft = fragmentManager.beginTransaction();
         final SlideshowDialogFragment newFragment = SlideshowDialogFragment.newInstance();
         final Bundle bundle = new Bundle();
-        bundle.putSerializable(ARG_IMAGES, adapter.getImages());
+        bundle.putInt(ARG_SESSION, session);
         bundle.putInt(ARG_POSITION, position);
         newFragment.setArguments(bundle);
         newFragment.show(ft, "slideshow");
@@ -144,30 +159,23 @@ final class GalleryView implements SessionSelectionListener
         parent.startActivity(intent);
     }
 
+    /**
+     * Update displayed media of selected session from manifest, only changed items are updated.
+     */
+    private void updateMedia()
+    {
+        preloader.reset();
+        adapter.submitList(manifest.getMedia(session));
+    }
+
     @Override
-    public void onSessionSelected(String root, String session)
+    public void onSessionSelected(String root, int session)
     {
-        if (session != null)
+        if (session != SessionKey.NONE)
         {
-            detailDate.setText(session);
-
-            final ArrayList<String> imageFiles = new ArrayList<>();
-            final File folder = new File(root, Util.getSessionFolder(session));
-            final File[] files = folder.listFiles();
-            if (files != null)
-            {
-                Arrays.sort(files);
-                for (File file : files)
-                {
-                    final String name = file.getName().toLowerCase(Locale.ENGLISH);
-                    if (name.endsWith(EXTENSION_IMAGE) || name.endsWith(EXTENSION_VIDEO))
-                    {
-                        imageFiles.add(file.getAbsolutePath());
-                    }
-                }
-                adapter.setImages(imageFiles);
-                adapter.notifyDataSetChanged();
-            }
+            this.session = session;
+            detailDate.setText(SessionKey.toName(session));
+            updateMedia();
         }
     }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Sessions location index, built from background and persisted in app storage.
+ * <p>
+ * Each session location is computed once from the EXIF GPS tags of all its images (mean of located images), and
+ * computed again only if the session folder has been modified since.
+ * </p>
+ */
+final class GeoIndex extends SessionIndex<GeoIndex.Location> implements SessionsFolderListener
+{
+    private static final int MAGIC = 0x47454F49;
+    private static final int VERSION = 1;
+    /** Session without location. */
+    private static final Location NONE = new Location(0.0, 0.0, "");
+
+    private final ExifReader exif = new ExifReader();
+    private final LoadScheduler scheduler;
+
+    /**
+     * Create index.
+     *
+     * @param file The index file in app storage.
+     * @param scheduler The loading scheduler.
+     */
+    GeoIndex(File file, LoadScheduler scheduler)
+    {
+        super(file, MAGIC, VERSION, NONE);
+
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Locate session from its images.
+     *
+     * @param session The session manifest.
+     * @return The session location, {@link #NONE} if no located image.
+     */
+    @Override
+    Location compute(MediaManifest.Session session)
+    {
+        double latitude = 0.0;
+        double longitude = 0.0;
+        int count = 0;
+        String source = null;
+        for (final MediaManifest.Media media : session.media)
+        {
+            if (media.type == MediaManifest.TYPE_IMAGE)
+            {
+                if (readLocation(media.path))
+                {
+                    latitude += exif.getLatitude();
+                    longitude += exif.getLongitude();
+                    count++;
+                    if (source == null)
+                    {
+                        source = media.path;
+                    }
+                }
+            }
+        }
+        if (count == 0)
+        {
+            return NONE;
+        }
+        return new Location(latitude / count, longitude / count, source);
+    }
+
+    /**
+     * Read image GPS location.
+     *
+     * @param image The image path.
+     * @return <code>true</code> if located, <code>false</code> else.
+     */
+    private boolean readLocation(String image)
+    {
+        try
+        {
+            return exif.read(image) && exif.isLocated();
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to read GPS of " + image, e);
+            return false;
+        }
+    }
+
+    @Override
+    Location read(DataInput input) throws IOException
+    {
+        final double latitude = input.readDouble();
+        final double longitude = input.readDouble();
+        final String source = input.readUTF();
+        return source.isEmpty() ? NONE : new Location(latitude, longitude, source);
+    }
+
+    @Override
+    void write(DataOutput output, Location location) throws IOException
+    {
+        output.writeDouble(location.latitude);
+        output.writeDouble(location.longitude);
+        output.writeUTF(location.source);
+    }
+
+    @Override
+    public void onSessionsFolderSelected(String sessionsFolder)
+    {
+        scheduler.io(LoadScheduler.PRIORITY_INDEX, () -> restore(sessionsFolder));
+    }
+
+    /**
+     * Session location.
+     */
+    static final class Location
+    {
+        /** Latitude in degrees. */
+        final double latitude;
+        /** Longitude in degrees. */
+        final double longitude;
+        /** Source image path. */
+        final String source;
+
+        /**
+         * Create location.
+         *
+         * @param latitude The latitude in degrees.
+         * @param longitude The longitude in degrees.
+         * @param source The source image path.
+         */
+        Location(double latitude, double longitude, String source)
+        {
+            super();
+
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.source = source;
+        }
+
+        /**
+         * Get location as geo coordinates ("latitude,longitude").
+         *
+         * @return The geo coordinates.
+         */
+        String toCoordinates()
+        {
+            return String.format(Locale.ENGLISH, "%.6f,%.6f", Double.valueOf(latitude), Double.valueOf(longitude));
+        }
+    }
+}
@@ -24,8 +24,8 @@ public interface InfoProvider
     /**
      * Provide session info from key.
      *
-     * @param session The session name.
+     * @param session The session key.
      * @return The info.
      */
-    SessionData getInfo(String session);
+    SessionData getInfo(int session);
 }
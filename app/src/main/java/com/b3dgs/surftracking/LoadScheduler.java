@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sessions folder loading scheduler, with separated storage and computation pools.
+ * <p>
+ * Tasks are run by priority, then in submission order. Each sessions folder selection starts a new generation: tasks
+ * of previous generations not yet started are cancelled, and their results are no more delivered to UI thread. Task
+ * failures, including errors, are reported to UI thread and complete the task future exceptionally.
+ * </p>
+ */
+final class LoadScheduler implements SessionsFolderListener
+{
+    /** Sessions to display, visible months first. */
+    static final int PRIORITY_SESSIONS = 0;
+    /** Indexes restored from storage. */
+    static final int PRIORITY_INDEX = 1;
+    /** Sessions folder scan and derived indexes. */
+    static final int PRIORITY_SCAN = 2;
+
+    private static final int IO_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    /**
+     * Create pool with background threads.
+     *
+     * @param name The threads name.
+     * @param threads The threads count.
+     * @return The created pool.
+     */
+    private static ThreadPoolExecutor createPool(String name, int threads)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads,
+                                                               threads,
+                                                               KEEP_ALIVE_SECONDS,
+                                                               TimeUnit.SECONDS,
+                                                               new PriorityBlockingQueue<>(),
+                                                               runnable -> createThread(runnable, name, count));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Create background thread.
+     *
+     * @param runnable The thread runnable.
+     * @param name The threads name.
+     * @param count The threads counter.
+     * @return The created thread.
+     */
+    private static Thread createThread(Runnable runnable, String name, AtomicInteger count)
+    {
+        return new Thread(() ->
+        {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, name + count.incrementAndGet());
+    }
+
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor io = createPool("load-io-", IO_THREADS);
+    private final ThreadPoolExecutor cpu = createPool("load-cpu-", Runtime.getRuntime().availableProcessors());
+    private final Consumer<Throwable> failure;
+
+    /**
+     * Create scheduler.
+     *
+     * @param failure The failure listener, called from UI thread.
+     */
+    LoadScheduler(Consumer<Throwable> failure)
+    {
+        super();
+
+        this.failure = failure;
+    }
+
+    /**
+     * Get current generation.
+     *
+     * @return The current generation.
+     */
+    int getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Check if generation is still the current one.
+     *
+     * @param generation The generation to check.
+     * @return <code>true</code> if current, <code>false</code> if stale.
+     */
+    boolean isCurrent(int generation)
+    {
+        return this.generation.get() == generation;
+    }
+
+    /**
+     * Run storage task in current generation.
+     *
+     * @param priority The task priority (lower first).
+     * @param task The task to run.
+     * @return The task future, cancelled if stale.
+     */
+    CompletableFuture<Void> io(int priority, Runnable task)
+    {
+        return submit(io, priority, () ->
+        {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run storage task with result in current generation.
+     *
+     * @param <T> The result type.
+     * @param priority The task priority (lower first).
+     * @param task The task to run.
+     * @return The task future, cancelled if stale.
+     */
+    <T> CompletableFuture<T> supplyIo(int priority, Supplier<T> task)
+    {
+        return submit(io, priority, task);
+    }
+
+    /**
+     * Run computation task in current generation.
+     *
+     * @param priority The task priority (lower first).
+     * @param task The task to run.
+     * @return The task future, cancelled if stale.
+     */
+    CompletableFuture<Void> cpu(int priority, Runnable task)
+    {
+        return submit(cpu, priority, () ->
+        {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run action on UI thread if generation is still the current one.
+     *
+     * @param generation The action generation.
+     * @param action The action to run.
+     */
+    void post(int generation, Runnable action)
+    {
+        handler.post(() ->
+        {
+            if (isCurrent(generation))
+            {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Stop all tasks.
+     */
+    void dispose()
+    {
+        generation.incrementAndGet();
+        io.shutdownNow();
+        cpu.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> submit(ThreadPoolExecutor executor, int priority, Supplier<T> task)
+    {
+        final int current = generation.get();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(new Job(priority, sequence.getAndIncrement(), () ->
+        {
+            if (!isCurrent(current))
+            {
+                future.cancel(false);
+                return;
+            }
+            try
+            {
+                future.complete(task.get());
+            }
+            catch (CancellationException e)
+            {
+                future.cancel(false);
+            }
+            catch (Throwable e)
+            {
+                Util.log("Loading failed !", e);
+                post(current, () -> failure.accept(e));
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    @Override
+    public void onSessionsFolderSelected(String sessionsFolder)
+    {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Prioritized task.
+     */
+    private static final class Job implements Runnable, Comparable<Job>
+    {
+        private final int priority;
+        private final long sequence;
+        private final Runnable task;
+
+        /**
+         * Create job.
+         *
+         * @param priority The job priority (lower first).
+         * @param sequence The submission order.
+         * @param task The task to run.
+         */
+        Job(int priority, long sequence, Runnable task)
+        {
+            super();
+
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(Job other)
+        {
+            final int result = Integer.compare(priority, other.priority);
+            if (result != 0)
+            {
+                return result;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
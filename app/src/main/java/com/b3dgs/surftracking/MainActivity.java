@@ -18,6 +18,7 @@ package com.b3dgs.surftracking;
 
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
 import android.os.Bundle;
 import android.support.design.widget.TabLayout;
 import android.support.v4.view.ViewPager;
@@ -25,18 +26,24 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.Toast;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.function.Consumer;
 
-public final class MainActivity extends AppCompatActivity
+public final class MainActivity extends AppCompatActivity implements MediaProvider
 {
     private static final int ACTIVITY_CHOOSE_FILE = 3;
 
     private final Collection<SessionsFolderListener> listeners = new ArrayList<>();
     private Consumer<Integer> tabChanger;
+    private SessionsView sessionsView;
+    private LoadScheduler scheduler;
+    private MediaManifest manifest;
+    private ThumbnailCache cache;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
@@ -50,16 +57,29 @@ public final class MainActivity extends AppCompatActivity
         final ViewPager viewPager = findViewById(R.id.container);
         final ArrayList<String> detailItems = new ArrayList<>();
 
-        final SessionsView sessionsView = new SessionsView(viewPager::setCurrentItem, detailItems);
+        scheduler = new LoadScheduler(this::onLoadFailed);
+        listeners.add(scheduler);
+        final GeoIndex geo = new GeoIndex(new File(getFilesDir(), Constant.FILE_GEO), scheduler);
+        listeners.add(geo);
+        manifest = new MediaManifest(scheduler);
+        manifest.addListener(() -> scheduler.io(LoadScheduler.PRIORITY_SCAN, () -> geo.build(manifest)));
+        listeners.add(manifest);
+
+        cache = new ThumbnailCache(new File(getCacheDir(), Constant.FOLDER_THUMBNAILS),
+                                   getResources().getDisplayMetrics());
+
+        sessionsView = new SessionsView(scheduler, manifest, cache, viewPager::setCurrentItem, detailItems);
         listeners.add(sessionsView);
 
-        final DetailAdapter detailAdapter = new DetailAdapter(this::startActivity, viewPager.getContext(), detailItems);
+        final DetailAdapter detailAdapter = new DetailAdapter(this::startActivity,
+                                                              geo,
+                                                              viewPager.getContext(),
+                                                              detailItems);
         sessionsView.addListener(detailAdapter);
-        listeners.add(detailAdapter);
 
         fireSessionsFolderSelected(Constant.DEFAULT_SESSIONS_FOLDER);
 
-        final GalleryView galleryView = new GalleryView(getFragmentManager(), detailAdapter);
+        final GalleryView galleryView = new GalleryView(getFragmentManager(), detailAdapter, manifest, cache);
         sessionsView.addListener(galleryView);
 
         viewPager.setAdapter(new SectionsPager(getSupportFragmentManager(),
@@ -74,11 +94,45 @@ public final class MainActivity extends AppCompatActivity
         tabChanger.accept(Constant.ID_SESSIONS_VIEW);
     }
 
+    @Override
+    public MediaManifest getManifest()
+    {
+        return manifest;
+    }
+
+    @Override
+    public ThumbnailCache getCache()
+    {
+        return cache;
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig)
+    {
+        super.onConfigurationChanged(newConfig);
+
+        sessionsView.onConfigurationChanged(newConfig);
+    }
+
+    @Override
+    public void onTrimMemory(int level)
+    {
+        super.onTrimMemory(level);
+
+        if (BuildConfig.DEBUG)
+        {
+            Util.log("Trim memory (" + level + "): " + SurfGlideModule.getStats());
+        }
+    }
+
     @Override
     protected void onDestroy()
     {
         super.onDestroy();
 
+        sessionsView.dispose();
+        scheduler.dispose();
+        cache.dispose();
         listeners.clear();
         tabChanger = null;
     }
@@ -127,6 +181,16 @@ public final class MainActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * Called from UI thread when a loading task failed.
+     *
+     * @param failure The failure cause.
+     */
+    private void onLoadFailed(Throwable failure)
+    {
+        Toast.makeText(this, getString(R.string.load_error, failure.getMessage()), Toast.LENGTH_LONG).show();
+    }
+
     private void fireSessionsFolderSelected(String path)
     {
         listeners.forEach(l -> l.onSessionsFolderSelected(path));
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.util.SparseArray;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Sessions media manifest, listing images and videos of each session folder ("yyyy/MM/dd[-n]").
+ * <p>
+ * Built from background by a parallel walk of month folders, reading file attributes in the same pass. Consumers
+ * read the published manifest instead of listing session folders.
+ * </p>
+ */
+final class MediaManifest implements SessionsFolderListener
+{
+    /** Image media type. */
+    static final byte TYPE_IMAGE = 0;
+    /** Video media type. */
+    static final byte TYPE_VIDEO = 1;
+
+    /** Session file depth from month folder. */
+    private static final int DEPTH_FILE = 2;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /**
+     * Get media type from file name.
+     *
+     * @param name The file name.
+     * @return The media type, <code>-1</code> if not a media.
+     */
+    static byte getType(String name)
+    {
+        final String lower = name.toLowerCase(Locale.ENGLISH);
+        if (lower.endsWith(GalleryView.EXTENSION_IMAGE))
+        {
+            return TYPE_IMAGE;
+        }
+        if (lower.endsWith(GalleryView.EXTENSION_VIDEO))
+        {
+            return TYPE_VIDEO;
+        }
+        return -1;
+    }
+
+    /**
+     * Get media identifier from its path (FNV-1a 64 bits hash).
+     *
+     * @param path The media path.
+     * @return The media identifier.
+     */
+    private static long getId(String path)
+    {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < path.length(); i++)
+        {
+            hash ^= path.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * List month folders ("yyyy/MM").
+     *
+     * @param root The sessions folder.
+     * @return The month folders.
+     * @throws IOException If unable to list folders.
+     */
+    private static List<Path> listMonths(Path root) throws IOException
+    {
+        final List<Path> months = new ArrayList<>();
+        try (DirectoryStream<Path> years = Files.newDirectoryStream(root, Files::isDirectory))
+        {
+            for (final Path year : years)
+            {
+                try (DirectoryStream<Path> content = Files.newDirectoryStream(year, Files::isDirectory))
+                {
+                    content.forEach(months::add);
+                }
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Walk month folder sessions.
+     *
+     * @param month The month folder.
+     * @return The month sessions.
+     */
+    private static List<Session> walk(Path month)
+    {
+        final MonthVisitor visitor = new MonthVisitor(month);
+        try
+        {
+            Files.walkFileTree(month, EnumSet.noneOf(FileVisitOption.class), DEPTH_FILE, visitor);
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to walk " + month, e);
+        }
+        return visitor.sessions;
+    }
+
+    private final Collection<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final LoadScheduler scheduler;
+    /** Sessions by key. Replaced on update, never modified once published. */
+    private volatile SparseArray<Session> sessions = new SparseArray<>();
+    private volatile String root;
+
+    /**
+     * Create manifest.
+     *
+     * @param scheduler The loading scheduler.
+     */
+    MediaManifest(LoadScheduler scheduler)
+    {
+        super();
+
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Add a manifest update listener, called from background.
+     *
+     * @param listener The listener to add.
+     */
+    void addListener(Runnable listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a manifest update listener.
+     *
+     * @param listener The listener to remove.
+     */
+    void removeListener(Runnable listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get sessions folder of current manifest.
+     *
+     * @return The sessions folder, <code>null</code> if none.
+     */
+    String getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Get all indexed sessions. Must not be modified.
+     *
+     * @return The sessions by key.
+     */
+    SparseArray<Session> getSessions()
+    {
+        return sessions;
+    }
+
+    /**
+     * Get session media. Does not access storage.
+     *
+     * @param session The session key.
+     * @return The session media sorted by name, empty if none or not yet indexed.
+     */
+    List<Media> getMedia(int session)
+    {
+        final Session current = sessions.get(session);
+        if (current == null)
+        {
+            return Collections.emptyList();
+        }
+        return current.media;
+    }
+
+    /**
+     * Get first session media of type.
+     *
+     * @param session The session key.
+     * @param type The media type.
+     * @return The first media, <code>null</code> if none.
+     */
+    Media getFirst(int session, byte type)
+    {
+        for (final Media media : getMedia(session))
+        {
+            if (media.type == type)
+            {
+                return media;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build manifest of sessions folder. Must be called from background.
+     *
+     * @param folder The sessions folder.
+     */
+    synchronized void build(String folder)
+    {
+        final List<Path> months;
+        try
+        {
+            months = listMonths(Paths.get(folder));
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to list sessions folder !", e);
+            return;
+        }
+
+        final List<List<Session>> walked = months.parallelStream()
+                                                 .map(MediaManifest::walk)
+                                                 .collect(Collectors.toList());
+        final SparseArray<Session> built = new SparseArray<>();
+        for (final List<Session> month : walked)
+        {
+            for (final Session session : month)
+            {
+                built.put(session.key, session);
+            }
+        }
+        root = folder;
+        sessions = built;
+
+        listeners.forEach(Runnable::run);
+    }
+
+    @Override
+    public void onSessionsFolderSelected(String sessionsFolder)
+    {
+        if (!sessionsFolder.equals(root))
+        {
+            sessions = new SparseArray<>();
+        }
+        scheduler.io(LoadScheduler.PRIORITY_SCAN, () -> build(sessionsFolder));
+    }
+
+    /**
+     * Session media entry.
+     */
+    static final class Media
+    {
+        /** Absolute file path. */
+        final String path;
+        /** Stable identifier, computed from path. */
+        final long id;
+        /** File size in bytes. */
+        final long size;
+        /** File modification time. */
+        final long modified;
+        /** Media type. */
+        final byte type;
+
+        /**
+         * Create media.
+         *
+         * @param path The absolute file path.
+         * @param size The file size in bytes.
+         * @param modified The file modification time.
+         * @param type The media type.
+         */
+        Media(String path, long size, long modified, byte type)
+        {
+            super();
+
+            this.path = path;
+            id = getId(path);
+            this.size = size;
+            this.modified = modified;
+            this.type = type;
+        }
+
+        /**
+         * Check if media is a video.
+         *
+         * @return <code>true</code> if video, <code>false</code> if image.
+         */
+        boolean isVideo()
+        {
+            return type == TYPE_VIDEO;
+        }
+    }
+
+    /**
+     * Session folder entry.
+     */
+    static final class Session
+    {
+        /** Session key. */
+        final int key;
+        /** Session folder path. */
+        final String folder;
+        /** Session folder modification time, including its thumbnail file. */
+        final long modified;
+        /** <code>true</code> if session defines a thumbnail file. */
+        final boolean thumbnailFile;
+        /** Session media, sorted by name. */
+        final List<Media> media;
+
+        /**
+         * Create session.
+         *
+         * @param key The session key.
+         * @param folder The session folder path.
+         * @param modified The session folder modification time.
+         * @param thumbnailFile <code>true</code> if session defines a thumbnail file.
+         * @param media The session media, sorted by name.
+         */
+        Session(int key, String folder, long modified, boolean thumbnailFile, List<Media> media)
+        {
+            super();
+
+            this.key = key;
+            this.folder = folder;
+            this.modified = modified;
+            this.thumbnailFile = thumbnailFile;
+            this.media = media;
+        }
+    }
+
+    /**
+     * Month folder visitor, collecting sessions with their media attributes.
+     */
+    private static final class MonthVisitor extends SimpleFileVisitor<Path>
+    {
+        private final List<Session> sessions = new ArrayList<>();
+        private final Path month;
+        private final String yearName;
+        private final String monthName;
+        private final List<Media> media = new ArrayList<>();
+        private Path folder;
+        private int key;
+        private long modified;
+        private boolean thumbnailFile;
+
+        /**
+         * Create visitor.
+         *
+         * @param month The month folder.
+         */
+        MonthVisitor(Path month)
+        {
+            super();
+
+            this.month = month;
+            yearName = month.getParent().getFileName().toString();
+            monthName = month.getFileName().toString();
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        {
+            if (dir.equals(month))
+            {
+                return FileVisitResult.CONTINUE;
+            }
+            key = SessionKey.parseFolder(yearName, monthName, dir.getFileName().toString());
+            if (key == SessionKey.NONE)
+            {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            folder = dir;
+            modified = attrs.lastModifiedTime().toMillis();
+            thumbnailFile = false;
+            media.clear();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+        {
+            if (folder == null || !attrs.isRegularFile() || !folder.equals(file.getParent()))
+            {
+                return FileVisitResult.CONTINUE;
+            }
+            final String name = file.getFileName().toString();
+            if (name.startsWith("."))
+            {
+                return FileVisitResult.CONTINUE;
+            }
+            if (Constant.THUMBNAIL_FILE.equals(name))
+            {
+                thumbnailFile = true;
+                modified = Math.max(modified, attrs.lastModifiedTime().toMillis());
+            }
+            else
+            {
+                final byte type = getType(name);
+                if (type >= 0)
+                {
+                    media.add(new Media(file.toString(), attrs.size(), attrs.lastModifiedTime().toMillis(), type));
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exception)
+        {
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exception)
+        {
+            if (dir.equals(folder))
+            {
+                final List<Media> sorted = new ArrayList<>(media);
+                sorted.sort((a, b) -> a.path.compareTo(b.path));
+                sessions.add(new Session(key, dir.toString(), modified, thumbnailFile,
+                                         Collections.unmodifiableList(sorted)));
+                folder = null;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
@@ -16,18 +16,22 @@
  */
 package com.b3dgs.surftracking;
 
-import android.view.LayoutInflater;
-import android.view.View;
-
-import java.io.File;
-import java.util.ArrayList;
-
 /**
- * Load sessions interface.
+ * Provide media collaborators, implemented by the activity hosting media fragments.
  */
-public interface SessionsLoader
+public interface MediaProvider
 {
-    ArrayList<View> loadSessions(File folder, LayoutInflater inflater);
+    /**
+     * Provide media manifest.
+     *
+     * @return The media manifest.
+     */
+    MediaManifest getManifest();
 
-    void onSessionsLoaded(ArrayList<View> views);
+    /**
+     * Provide thumbnails cache.
+     *
+     * @return The thumbnails cache.
+     */
+    ThumbnailCache getCache();
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.text.format.DateFormat;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.GridView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the calendar months, most recent first. Month views are recycled and bound on demand.
+ */
+final class MonthsAdapter extends RecyclerView.Adapter<MonthsAdapter.MonthHolder>
+{
+    /**
+     * Month view holder, keeping its calendar adapter to rebind another month.
+     */
+    static final class MonthHolder extends RecyclerView.ViewHolder
+    {
+        final TextView title;
+        final GridView grid;
+        final CalendarAdapter adapter;
+        /** Bound month, <code>null</code> if not bound yet. */
+        SessionsMonth month;
+        /** Orientation the grid was sized for. */
+        int orientation = Configuration.ORIENTATION_UNDEFINED;
+
+        /**
+         * Create holder.
+         *
+         * @param view The month view.
+         * @param adapter The calendar adapter, bound to the month grid.
+         */
+        MonthHolder(View view, CalendarAdapter adapter)
+        {
+            super(view);
+
+            title = view.findViewById(R.id.title);
+            grid = view.findViewById(R.id.grid);
+            this.adapter = adapter;
+            grid.setAdapter(adapter);
+        }
+    }
+
+    /** Months, most recent first. */
+    private final List<SessionsMonth> months = new ArrayList<>();
+    private final ThumbnailIndex thumbnails;
+    private final ThumbnailCache cache;
+    private final InfoProvider detailProvider;
+    private final AdapterView.OnItemClickListener detailListener;
+    private final MonthsResizer resizer;
+
+    /**
+     * Create adapter.
+     *
+     * @param thumbnails The sessions thumbnail.
+     * @param cache The thumbnails cache.
+     * @param detailProvider The detail provider.
+     * @param detailListener The session click listener.
+     * @param resizer The months resizer.
+     */
+    MonthsAdapter(ThumbnailIndex thumbnails,
+                  ThumbnailCache cache,
+                  InfoProvider detailProvider,
+                  AdapterView.OnItemClickListener detailListener,
+                  MonthsResizer resizer)
+    {
+        super();
+
+        this.thumbnails = thumbnails;
+        this.cache = cache;
+        this.detailProvider = detailProvider;
+        this.detailListener = detailListener;
+        this.resizer = resizer;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Add month, keeping most recent months first whatever the adding order. Month already added (same month split in
+     * sessions file) is merged, so month keys stay unique.
+     *
+     * @param month The month to add.
+     */
+    void add(SessionsMonth month)
+    {
+        final int key = month.getKey();
+        int index = 0;
+        while (index < months.size() && months.get(index).getKey() > key)
+        {
+            index++;
+        }
+        if (index < months.size() && months.get(index).getKey() == key)
+        {
+            months.set(index, months.get(index).merge(month));
+            notifyItemChanged(index);
+        }
+        else
+        {
+            months.add(index, month);
+            notifyItemInserted(index);
+        }
+    }
+
+    /**
+     * Replace month having the same key, or add it if missing.
+     *
+     * @param month The month to put.
+     */
+    void put(SessionsMonth month)
+    {
+        final int index = indexOf(month.getKey());
+        if (index < 0)
+        {
+            add(month);
+        }
+        else
+        {
+            months.set(index, month);
+            notifyItemChanged(index);
+        }
+    }
+
+    /**
+     * Remove month.
+     *
+     * @param key The month key.
+     */
+    void remove(int key)
+    {
+        final int index = indexOf(key);
+        if (index >= 0)
+        {
+            months.remove(index);
+            notifyItemRemoved(index);
+        }
+    }
+
+    private int indexOf(int key)
+    {
+        for (int i = 0; i < months.size(); i++)
+        {
+            if (months.get(i).getKey() == key)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove all months.
+     */
+    void clear()
+    {
+        months.clear();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Get month at position.
+     *
+     * @param position The month position.
+     * @return The month.
+     */
+    SessionsMonth get(int position)
+    {
+        return months.get(position);
+    }
+
+    /**
+     * Get month key at position.
+     *
+     * @param position The month position.
+     * @return The month key.
+     */
+    int getKey(int position)
+    {
+        return months.get(position).getKey();
+    }
+
+    @NonNull
+    @Override
+    public MonthHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType)
+    {
+        final Context context = parent.getContext();
+        final View view = LayoutInflater.from(context).inflate(R.layout.calendar_month, parent, false);
+        final CalendarAdapter adapter = new CalendarAdapter(context, thumbnails, cache, detailProvider);
+        final MonthHolder holder = new MonthHolder(view, adapter);
+        holder.grid.setOnItemClickListener(detailListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MonthHolder holder, int position)
+    {
+        final SessionsMonth month = months.get(position);
+        holder.month = month;
+        holder.title.setText(DateFormat.format("MMMM yyyy", month.getCalendar()));
+        holder.adapter.setSessions(month);
+        resizer.resize(holder);
+    }
+
+    @Override
+    public void onViewAttachedToWindow(@NonNull MonthHolder holder)
+    {
+        resizer.attach(holder);
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(@NonNull MonthHolder holder)
+    {
+        resizer.detach(holder);
+    }
+
+    @Override
+    public long getItemId(int position)
+    {
+        return months.get(position).getKey();
+    }
+
+    @Override
+    public int getItemCount()
+    {
+        return months.size();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Frame paced months insertion. Loaded months are inserted on each frame until the frame budget is consumed, closest
+ * to the visible month first.
+ */
+final class MonthsInserter implements Choreographer.FrameCallback
+{
+    /** Insertion time budget per frame. */
+    private static final long FRAME_BUDGET_NANO = TimeUnit.MILLISECONDS.toNanos(4L);
+
+    private final List<SessionsMonth> pending = new ArrayList<>();
+    private final Consumer<SessionsMonth> target;
+    private final IntSupplier visibleKey;
+    private boolean scheduled;
+
+    /**
+     * Create inserter.
+     *
+     * @param target The month insertion target.
+     * @param visibleKey The visible month key provider, {@link SessionKey#NONE} if none.
+     */
+    MonthsInserter(Consumer<SessionsMonth> target, IntSupplier visibleKey)
+    {
+        super();
+
+        this.target = target;
+        this.visibleKey = visibleKey;
+    }
+
+    /**
+     * Schedule month insertion. Must be called from UI thread.
+     *
+     * @param month The month to insert.
+     */
+    void post(SessionsMonth month)
+    {
+        pending.add(month);
+        if (!scheduled)
+        {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Check if insertions are pending. Must be called from UI thread.
+     *
+     * @return <code>true</code> if pending, <code>false</code> else.
+     */
+    boolean isPending()
+    {
+        return scheduled;
+    }
+
+    /**
+     * Cancel all pending insertions. Must be called from UI thread.
+     */
+    void cancel()
+    {
+        Choreographer.getInstance().removeFrameCallback(this);
+        pending.clear();
+        scheduled = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        final long start = System.nanoTime();
+        final int visible = visibleKey.getAsInt();
+        if (visible == SessionKey.NONE)
+        {
+            pending.sort(Comparator.comparingInt(month -> -month.getKey()));
+        }
+        else
+        {
+            pending.sort(Comparator.comparingInt(month -> Math.abs(month.getKey() - visible)));
+        }
+
+        int inserted = 0;
+        while (inserted < pending.size() && System.nanoTime() - start < FRAME_BUDGET_NANO)
+        {
+            target.accept(pending.get(inserted));
+            inserted++;
+        }
+        pending.subList(0, inserted).clear();
+
+        scheduled = !pending.isEmpty();
+        if (scheduled)
+        {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.content.res.Configuration;
+import android.view.ViewGroup;
+import android.widget.GridView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Resize attached month grids on configuration change, in a single pass.
+ */
+final class MonthsResizer
+{
+    private static final int COLUMNS = 4;
+    private static final int ROW_HEIGHT_PORTRAIT = 182;
+    private static final int ROW_HEIGHT_LANDSCAPE = 320;
+
+    private final Collection<MonthsAdapter.MonthHolder> attached = new ArrayList<>();
+    private int orientation;
+
+    /**
+     * Create resizer.
+     *
+     * @param configuration The current configuration.
+     */
+    MonthsResizer(Configuration configuration)
+    {
+        super();
+
+        orientation = configuration.orientation;
+    }
+
+    /**
+     * Called when month view has been attached.
+     *
+     * @param holder The attached month.
+     */
+    void attach(MonthsAdapter.MonthHolder holder)
+    {
+        attached.add(holder);
+        if (holder.orientation != orientation)
+        {
+            resize(holder);
+        }
+    }
+
+    /**
+     * Called when month view has been detached.
+     *
+     * @param holder The detached month.
+     */
+    void detach(MonthsAdapter.MonthHolder holder)
+    {
+        attached.remove(holder);
+    }
+
+    /**
+     * Resize month grid to display all rows with current orientation.
+     *
+     * @param holder The month to resize.
+     */
+    void resize(MonthsAdapter.MonthHolder holder)
+    {
+        if (holder.month != null)
+        {
+            final int height = orientation == Configuration.ORIENTATION_PORTRAIT ? ROW_HEIGHT_PORTRAIT
+                                                                                 : ROW_HEIGHT_LANDSCAPE;
+            final GridView gridView = holder.grid;
+            final ViewGroup.LayoutParams params = gridView.getLayoutParams();
+            final int rows = (holder.month.size() + COLUMNS - 1) / COLUMNS;
+            params.height = height * rows;
+            gridView.setLayoutParams(params);
+            holder.orientation = orientation;
+        }
+    }
+
+    /**
+     * Called on configuration change. Resize all attached months if orientation changed, others being resized when
+     * attached again.
+     *
+     * @param configuration The new configuration.
+     */
+    void onConfigurationChanged(Configuration configuration)
+    {
+        if (orientation != configuration.orientation)
+        {
+            orientation = configuration.orientation;
+            for (final MonthsAdapter.MonthHolder holder : attached)
+            {
+                resize(holder);
+            }
+        }
+    }
+}
@@ -16,51 +16,36 @@
  */
 package com.b3dgs.surftracking;
 
-import org.w3c.dom.Element;
-
 /**
- * Session data representation.
+ * Session data representation, as a lightweight view on the sessions store.
  */
 public final class SessionData
 {
-    private final String start;
-    private final String time;
-    private final String md;
-    private final String mf;
-    private final String coef;
-    private final String hmin;
-    private final String hmax;
-    private final String p;
-    private final String hdir;
-    private final String vdir;
-    private final String bft;
-    private final String kj;
-    private final String s;
-    private final String vp;
+    private final SessionStore store;
+    private final int id;
 
     /**
-     * Create and load session data.
+     * Create session data view.
      *
-     * @param e The data element.
+     * @param store The sessions store.
+     * @param id The session id.
      */
-    SessionData(Element e)
+    SessionData(SessionStore store, int id)
     {
         super();
 
-        start = get(e, "start");
-        time = get(e, "time");
-        md = String.valueOf(Double.parseDouble(get(e, "Md")));
-        mf = String.valueOf(Double.parseDouble(get(e, "Mf")));
-        coef = get(e, "coef");
-        hmin = String.valueOf(Double.parseDouble(get(e, "Hm")));
-        hmax = String.valueOf(Double.parseDouble(get(e, "HM")));
-        p = get(e, "P");
-        kj = String.valueOf(getKj(Double.parseDouble(hmax), Double.parseDouble(p)));
-        hdir = get(e, "Hdir");
-        vdir = get(e, "Vdir");
-        bft = get(e, "Bft");
-        s = get(e, "S");
-        vp = get(e, "Vp");
+        this.store = store;
+        this.id = id;
+    }
+
+    /**
+     * Get session key.
+     *
+     * @return The session key.
+     */
+    public int getKey()
+    {
+        return store.getKey(id);
     }
 
     /**
@@ -70,7 +55,7 @@ public final class SessionData
      */
     public String getStart()
     {
-        return start;
+        return store.getStart(id);
     }
 
     /**
@@ -80,7 +65,7 @@ public final class SessionData
      */
     public String getTime()
     {
-        return time;
+        return store.getTime(id);
     }
 
     /**
@@ -88,9 +73,9 @@ public final class SessionData
      *
      * @return The tide start.
      */
-    public String getMd()
+    public double getMd()
     {
-        return md;
+        return store.getMd(id);
     }
 
     /**
@@ -98,9 +83,9 @@ public final class SessionData
      *
      * @return The tide end.
      */
-    public String getMf()
+    public double getMf()
     {
-        return mf;
+        return store.getMf(id);
     }
 
     /**
@@ -108,9 +93,9 @@ public final class SessionData
      *
      * @return The tide factor.
      */
-    public String getCoef()
+    public int getCoef()
     {
-        return coef;
+        return store.getCoef(id);
     }
 
     /**
@@ -118,9 +103,9 @@ public final class SessionData
      *
      * @return The minimum wave height.
      */
-    public String getHmin()
+    public double getHmin()
     {
-        return hmin;
+        return store.getHmin(id);
     }
 
     /**
@@ -128,9 +113,9 @@ public final class SessionData
      *
      * @return The maximum wave height.
      */
-    public String getHmax()
+    public double getHmax()
     {
-        return hmax;
+        return store.getHmax(id);
     }
 
     /**
@@ -138,9 +123,9 @@ public final class SessionData
      *
      * @return The wave period.
      */
-    public String getP()
+    public double getP()
     {
-        return p;
+        return store.getP(id);
     }
 
     /**
@@ -150,7 +135,7 @@ public final class SessionData
      */
     public String getHdir()
     {
-        return hdir;
+        return store.getHdir(id);
     }
 
     /**
@@ -160,7 +145,7 @@ public final class SessionData
      */
     public String getVdir()
     {
-        return vdir;
+        return store.getVdir(id);
     }
 
     /**
@@ -168,9 +153,9 @@ public final class SessionData
      *
      * @return The wind strength.
      */
-    public String getBft()
+    public int getBft()
     {
-        return bft;
+        return store.getBft(id);
     }
 
     /**
@@ -178,9 +163,9 @@ public final class SessionData
      *
      * @return The computed wave energy.
      */
-    public String getKj()
+    public int getKj()
     {
-        return kj;
+        return store.getKj(id);
     }
 
     /**
@@ -188,9 +173,9 @@ public final class SessionData
      *
      * @return The session score.
      */
-    public String getS()
+    public int getS()
     {
-        return s;
+        return store.getScore(id);
     }
 
     /**
@@ -198,18 +183,8 @@ public final class SessionData
      *
      * @return The taken waves count.
      */
-    public String getVp()
-    {
-        return vp;
-    }
-
-    private static String get(Element element, String attribute)
-    {
-        return element.getAttribute(attribute);
-    }
-
-    private static int getKj(double hm, double p)
+    public int getVp()
     {
-        return (int) Math.floor(hm * hm * p * 21);
+        return store.getWaves(id);
     }
 }
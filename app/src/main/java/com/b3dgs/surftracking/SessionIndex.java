@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.util.SparseArray;
+import android.util.SparseLongArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Per session index, built from background and persisted in app storage.
+ * <p>
+ * Each session value is computed once from the media manifest, and computed again only if the session folder has been
+ * modified since. Implementations only define how a value is computed and encoded.
+ * </p>
+ *
+ * @param <T> The indexed value type.
+ */
+abstract class SessionIndex<T>
+{
+    private static final String TEMP = ".tmp";
+
+    private final File file;
+    private final int magic;
+    private final int version;
+    /** Session without value. */
+    private final T none;
+    /** Value by session key. Replaced on update, never modified once published. */
+    private volatile SparseArray<T> values = new SparseArray<>();
+    /** Session folder modification time by session key. Only accessed by builder. */
+    private SparseLongArray modified;
+    /** Indexed sessions folder. Only accessed by builder. */
+    private String root;
+
+    /**
+     * Create index.
+     *
+     * @param file The index file in app storage.
+     * @param magic The index file magic.
+     * @param version The index file version.
+     * @param none The value of sessions without value.
+     */
+    SessionIndex(File file, int magic, int version, T none)
+    {
+        super();
+
+        this.file = file;
+        this.magic = magic;
+        this.version = version;
+        this.none = none;
+    }
+
+    /**
+     * Compute session value. Called from builder.
+     *
+     * @param session The session manifest.
+     * @return The session value, none value if none.
+     */
+    abstract T compute(MediaManifest.Session session);
+
+    /**
+     * Read persisted value.
+     *
+     * @param input The index input.
+     * @return The value read, none value if none.
+     * @throws IOException If read error.
+     */
+    abstract T read(DataInput input) throws IOException;
+
+    /**
+     * Write value.
+     *
+     * @param output The index output.
+     * @param value The value to write, may be none value.
+     * @throws IOException If write error.
+     */
+    abstract void write(DataOutput output, T value) throws IOException;
+
+    /**
+     * Called from background when index has been published. Does nothing by default.
+     */
+    void onUpdated()
+    {
+        // Nothing by default
+    }
+
+    /**
+     * Get session value. Does not access storage.
+     *
+     * @param session The session key.
+     * @return The session value, <code>null</code> if none or not yet indexed.
+     */
+    final T get(int session)
+    {
+        final T value = values.get(session);
+        if (value == null || value == none)
+        {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Publish persisted index if not already loaded for this sessions folder. Must be called from background.
+     *
+     * @param folder The sessions folder.
+     */
+    final synchronized void restore(String folder)
+    {
+        if (modified == null || !folder.equals(root))
+        {
+            load(folder);
+        }
+    }
+
+    /**
+     * Build index for all manifest sessions. Must be called from background.
+     *
+     * @param manifest The media manifest.
+     */
+    final synchronized void build(MediaManifest manifest)
+    {
+        restore(manifest.getRoot());
+
+        final SparseArray<MediaManifest.Session> sessions = manifest.getSessions();
+        final int count = sessions.size();
+        final SparseArray<T> updated = new SparseArray<>(count);
+        final SparseLongArray updatedModified = new SparseLongArray(count);
+        final SparseArray<T> current = values;
+        boolean changed = current.size() != count;
+        for (int i = 0; i < count; i++)
+        {
+            final int key = sessions.keyAt(i);
+            final MediaManifest.Session session = sessions.valueAt(i);
+            T value = current.get(key);
+            if (value == null || modified.get(key, -1L) != session.modified)
+            {
+                value = compute(session);
+                changed = true;
+            }
+            updated.put(key, value);
+            updatedModified.put(key, session.modified);
+        }
+        modified = updatedModified;
+        if (changed)
+        {
+            values = updated;
+            save();
+            onUpdated();
+        }
+    }
+
+    /**
+     * Load persisted index, and publish it if matching the sessions folder. Values of previous folder are cleared else.
+     *
+     * @param folder The sessions folder.
+     */
+    private void load(String folder)
+    {
+        root = folder;
+        modified = new SparseLongArray();
+        SparseArray<T> loaded = new SparseArray<>();
+        if (file.isFile())
+        {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+            {
+                if (input.readInt() == magic && input.readInt() == version && folder.equals(input.readUTF()))
+                {
+                    final int count = input.readInt();
+                    loaded = new SparseArray<>(count);
+                    for (int i = 0; i < count; i++)
+                    {
+                        final int key = input.readInt();
+                        modified.put(key, input.readLong());
+                        loaded.put(key, read(input));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                Util.log("Unable to load index: " + file, e);
+                modified.clear();
+                loaded = new SparseArray<>();
+            }
+        }
+        if (loaded.size() > 0 || values.size() > 0)
+        {
+            values = loaded;
+            onUpdated();
+        }
+    }
+
+    /**
+     * Persist index to a temporary file renamed once complete. Failure is not critical.
+     */
+    private void save()
+    {
+        final SparseArray<T> current = values;
+        final File temp = new File(file.getPath() + TEMP);
+        try
+        {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                output.writeInt(magic);
+                output.writeInt(version);
+                output.writeUTF(root);
+                output.writeInt(current.size());
+                for (int i = 0; i < current.size(); i++)
+                {
+                    final int key = current.keyAt(i);
+                    output.writeInt(key);
+                    output.writeLong(modified.get(key));
+                    write(output, current.valueAt(i));
+                }
+            }
+            if (!temp.renameTo(file))
+            {
+                throw new IOException("Unable to rename: " + temp);
+            }
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to save index: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import java.io.File;
+
+/**
+ * Packed session key, encoding the session date and its order in the day ("yyyy-MM-dd[-n]").
+ * <p>
+ * Keys are ordered by date then order in day. Encoding, decoding and folder resolution do not allocate.
+ * </p>
+ */
+final class SessionKey
+{
+    /** Invalid key. */
+    static final int NONE = -1;
+
+    private static final int SHIFT_YEAR = 13;
+    private static final int SHIFT_MONTH = 9;
+    private static final int SHIFT_DAY = 4;
+    private static final int MASK_YEAR = 0xFFF;
+    private static final int MASK_MONTH = 0xF;
+    private static final int MASK_DAY = 0x1F;
+    private static final int MASK_ORDER = 0xF;
+    private static final char SEPARATOR = '-';
+
+    /**
+     * Encode session key.
+     *
+     * @param year The session year.
+     * @param month The session month (from 1 to 12).
+     * @param day The session day (from 1 to 31).
+     * @param order The session order in day (from 1), <code>0</code> if single session in day.
+     * @return The session key.
+     */
+    static int of(int year, int month, int day, int order)
+    {
+        return (year & MASK_YEAR) << SHIFT_YEAR
+               | (month & MASK_MONTH) << SHIFT_MONTH
+               | (day & MASK_DAY) << SHIFT_DAY
+               | order & MASK_ORDER;
+    }
+
+    /**
+     * Parse session name ("yyyy-MM-dd[-n]").
+     *
+     * @param name The session name.
+     * @return The session key, {@link #NONE} if invalid.
+     */
+    static int parse(CharSequence name)
+    {
+        final int length = name.length();
+        final int year = parseNumber(name, 0, length);
+        final int month = parseNumber(name, 5, length);
+        final int day = parseNumber(name, 8, length);
+        if (year < 0 || month < 0 || day < 0)
+        {
+            return NONE;
+        }
+        int order = 0;
+        if (length > 11 && name.charAt(10) == SEPARATOR)
+        {
+            order = parseNumber(name, 11, length);
+            if (order < 0)
+            {
+                return NONE;
+            }
+        }
+        return of(year, month, day, order);
+    }
+
+    /**
+     * Parse session folder names ("yyyy", "MM", "dd[-n]").
+     *
+     * @param year The year folder name.
+     * @param month The month folder name.
+     * @param day The day folder name.
+     * @return The session key, {@link #NONE} if invalid.
+     */
+    static int parseFolder(CharSequence year, CharSequence month, CharSequence day)
+    {
+        final int yearValue = parseNumber(year, 0, year.length());
+        final int monthValue = parseNumber(month, 0, month.length());
+        final int length = day.length();
+        final int dayValue = parseNumber(day, 0, length);
+        if (yearValue < 0 || monthValue < 0 || dayValue < 0)
+        {
+            return NONE;
+        }
+        int order = 0;
+        if (length > 3 && day.charAt(2) == SEPARATOR)
+        {
+            order = parseNumber(day, 3, length);
+            if (order < 0)
+            {
+                return NONE;
+            }
+        }
+        return of(yearValue, monthValue, dayValue, order);
+    }
+
+    /**
+     * Get the session year.
+     *
+     * @param key The session key.
+     * @return The session year.
+     */
+    static int getYear(int key)
+    {
+        return key >> SHIFT_YEAR & MASK_YEAR;
+    }
+
+    /**
+     * Get the session month.
+     *
+     * @param key The session key.
+     * @return The session month (from 1 to 12).
+     */
+    static int getMonth(int key)
+    {
+        return key >> SHIFT_MONTH & MASK_MONTH;
+    }
+
+    /**
+     * Get the session day.
+     *
+     * @param key The session key.
+     * @return The session day (from 1 to 31).
+     */
+    static int getDay(int key)
+    {
+        return key >> SHIFT_DAY & MASK_DAY;
+    }
+
+    /**
+     * Get the session order in day.
+     *
+     * @param key The session key.
+     * @return The session order in day (from 1), <code>0</code> if single session in day.
+     */
+    static int getOrder(int key)
+    {
+        return key & MASK_ORDER;
+    }
+
+    /**
+     * Get the session date key, without the order in day.
+     *
+     * @param key The session key.
+     * @return The date key.
+     */
+    static int getDate(int key)
+    {
+        return key & ~MASK_ORDER;
+    }
+
+    /**
+     * Append session name ("yyyy-MM-dd[-n]").
+     *
+     * @param key The session key.
+     * @param out The output builder.
+     */
+    static void appendName(int key, StringBuilder out)
+    {
+        append(key, SEPARATOR, out);
+    }
+
+    /**
+     * Append session folder path relative to sessions folder ("yyyy/MM/dd[-n]").
+     *
+     * @param key The session key.
+     * @param out The output builder.
+     */
+    static void appendFolder(int key, StringBuilder out)
+    {
+        append(key, File.separatorChar, out);
+    }
+
+    /**
+     * Get session name ("yyyy-MM-dd[-n]").
+     *
+     * @param key The session key.
+     * @return The session name.
+     */
+    static String toName(int key)
+    {
+        final StringBuilder builder = new StringBuilder(13);
+        appendName(key, builder);
+        return builder.toString();
+    }
+
+    private static void append(int key, char separator, StringBuilder out)
+    {
+        appendDigits(getYear(key), 4, out);
+        out.append(separator);
+        appendDigits(getMonth(key), 2, out);
+        out.append(separator);
+        appendDigits(getDay(key), 2, out);
+        final int order = getOrder(key);
+        if (order > 0)
+        {
+            out.append(SEPARATOR).append(order);
+        }
+    }
+
+    private static void appendDigits(int value, int digits, StringBuilder out)
+    {
+        int pow = 1;
+        for (int i = 1; i < digits; i++)
+        {
+            pow *= 10;
+        }
+        for (; pow > 0; pow /= 10)
+        {
+            out.append((char) ('0' + value / pow % 10));
+        }
+    }
+
+    /**
+     * Parse number until separator or end.
+     *
+     * @param text The text to parse.
+     * @param start The first char index.
+     * @param end The last char index (excluded).
+     * @return The parsed number, <code>-1</code> if invalid.
+     */
+    private static int parseNumber(CharSequence text, int start, int end)
+    {
+        int value = 0;
+        int i = start;
+        while (i < end && text.charAt(i) != SEPARATOR)
+        {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+            i++;
+        }
+        if (i == start)
+        {
+            return -1;
+        }
+        return value;
+    }
+
+    private SessionKey()
+    {
+        // Private
+    }
+}
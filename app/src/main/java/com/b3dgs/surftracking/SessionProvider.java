@@ -16,8 +16,6 @@
  */
 package com.b3dgs.surftracking;
 
-import java.util.Map;
-
 /**
  * Provide info.
  */
@@ -28,5 +26,5 @@ public interface SessionProvider
      *
      * @return The sessions data.
      */
-    Map<String, SessionData> getData();
+    SessionStore getData();
 }
@@ -25,7 +25,7 @@ public interface SessionSelectionListener
      * Called when new session selected.
      *
      * @param root The root sessions folder.
-     * @param session The selected session name.
+     * @param session The selected session key.
      */
-    void onSessionSelected(String root, String session);
+    void onSessionSelected(String root, int session);
 }
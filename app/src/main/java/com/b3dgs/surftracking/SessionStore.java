@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.util.SparseIntArray;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Columnar sessions store. Each session value is stored in a primitive column, indexed by a dense session id.
+ * Thread safe, columns being reallocated when growing, all accesses are synchronized on the store.
+ */
+final class SessionStore
+{
+    /** Unknown session id. */
+    static final int UNKNOWN = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final String[] DIRECTIONS =
+    {
+        "_N", "NO", "NE", "_S", "SO", "SE", "_E", "_O"
+    };
+
+    /**
+     * Get attribute value.
+     *
+     * @param attributes The attributes by name.
+     * @param attribute The attribute name.
+     * @return The attribute value, empty if undefined.
+     */
+    private static String get(Function<String, String> attributes, String attribute)
+    {
+        final String value = attributes.apply(attribute);
+        if (value == null)
+        {
+            return "";
+        }
+        return value;
+    }
+
+    /**
+     * Parse integer value, tolerating decimal notation.
+     *
+     * @param value The value to parse.
+     * @return The integer value, <code>0</code> if empty.
+     */
+    private static int parseInt(String value)
+    {
+        if (value.isEmpty())
+        {
+            return 0;
+        }
+        return (int) Math.round(Double.parseDouble(value));
+    }
+
+    /**
+     * Encode direction code.
+     *
+     * @param code The direction code.
+     * @return The direction index, <code>-1</code> if unknown.
+     */
+    private static byte getDirection(String code)
+    {
+        for (byte i = 0; i < DIRECTIONS.length; i++)
+        {
+            if (DIRECTIONS[i].equals(code))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int getKj(double hm, double p)
+    {
+        return (int) Math.floor(hm * hm * p * 21);
+    }
+
+    /** Session id by key. */
+    private final SparseIntArray ids = new SparseIntArray(INITIAL_CAPACITY);
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private String[] start = new String[INITIAL_CAPACITY];
+    private String[] time = new String[INITIAL_CAPACITY];
+    private double[] md = new double[INITIAL_CAPACITY];
+    private double[] mf = new double[INITIAL_CAPACITY];
+    private double[] hmin = new double[INITIAL_CAPACITY];
+    private double[] hmax = new double[INITIAL_CAPACITY];
+    private double[] p = new double[INITIAL_CAPACITY];
+    private int[] coef = new int[INITIAL_CAPACITY];
+    private int[] bft = new int[INITIAL_CAPACITY];
+    private int[] score = new int[INITIAL_CAPACITY];
+    private int[] waves = new int[INITIAL_CAPACITY];
+    private int[] kj = new int[INITIAL_CAPACITY];
+    private byte[] hdir = new byte[INITIAL_CAPACITY];
+    private byte[] vdir = new byte[INITIAL_CAPACITY];
+    private volatile int count;
+
+    /**
+     * Create store.
+     */
+    SessionStore()
+    {
+        super();
+    }
+
+    /**
+     * Add a session. Its key must be defined with {@link #setKey(int, int)}.
+     *
+     * @param e The session attributes, by name.
+     * @return The session id.
+     */
+    synchronized int add(Function<String, String> e)
+    {
+        final int id = count;
+        ensureCapacity(id + 1);
+
+        start[id] = get(e, "start");
+        time[id] = get(e, "time");
+        md[id] = Double.parseDouble(get(e, "Md"));
+        mf[id] = Double.parseDouble(get(e, "Mf"));
+        coef[id] = parseInt(get(e, "coef"));
+        hmin[id] = Double.parseDouble(get(e, "Hm"));
+        hmax[id] = Double.parseDouble(get(e, "HM"));
+        p[id] = Double.parseDouble(get(e, "P"));
+        kj[id] = getKj(hmax[id], p[id]);
+        hdir[id] = getDirection(get(e, "Hdir"));
+        vdir[id] = getDirection(get(e, "Vdir"));
+        bft[id] = parseInt(get(e, "Bft"));
+        score[id] = parseInt(get(e, "S"));
+        waves[id] = parseInt(get(e, "Vp"));
+
+        count++;
+        return id;
+    }
+
+    /**
+     * Set the session key.
+     *
+     * @param id The session id.
+     * @param key The session key.
+     */
+    synchronized void setKey(int id, int key)
+    {
+        keys[id] = key;
+        ids.put(key, id);
+    }
+
+    /**
+     * Remove session key. Its data are left in store, unreferenced.
+     *
+     * @param key The session key.
+     */
+    synchronized void removeKey(int key)
+    {
+        ids.delete(key);
+    }
+
+    /**
+     * Check if session data are the same as another store session data. Other store must not be modified
+     * concurrently.
+     *
+     * @param id The session id.
+     * @param other The other store.
+     * @param otherId The other session id.
+     * @return <code>true</code> if same data, <code>false</code> else.
+     */
+    synchronized boolean isSame(int id, SessionStore other, int otherId)
+    {
+        return keys[id] == other.keys[otherId]
+               && Objects.equals(start[id], other.start[otherId])
+               && Objects.equals(time[id], other.time[otherId])
+               && md[id] == other.md[otherId]
+               && mf[id] == other.mf[otherId]
+               && hmin[id] == other.hmin[otherId]
+               && hmax[id] == other.hmax[otherId]
+               && p[id] == other.p[otherId]
+               && coef[id] == other.coef[otherId]
+               && bft[id] == other.bft[otherId]
+               && score[id] == other.score[otherId]
+               && waves[id] == other.waves[otherId]
+               && hdir[id] == other.hdir[otherId]
+               && vdir[id] == other.vdir[otherId];
+    }
+
+    /**
+     * Copy session data from another store. Key of an added session must be defined with {@link #setKey(int, int)}.
+     * Other store must not be modified concurrently.
+     *
+     * @param id The session id to replace, {@link #UNKNOWN} to add a session.
+     * @param other The other store.
+     * @param otherId The other session id.
+     * @return The session id.
+     */
+    synchronized int copy(int id, SessionStore other, int otherId)
+    {
+        int target = id;
+        if (target == UNKNOWN)
+        {
+            target = count;
+            ensureCapacity(target + 1);
+            count++;
+        }
+        keys[target] = other.keys[otherId];
+        start[target] = other.start[otherId];
+        time[target] = other.time[otherId];
+        md[target] = other.md[otherId];
+        mf[target] = other.mf[otherId];
+        hmin[target] = other.hmin[otherId];
+        hmax[target] = other.hmax[otherId];
+        p[target] = other.p[otherId];
+        coef[target] = other.coef[otherId];
+        bft[target] = other.bft[otherId];
+        score[target] = other.score[otherId];
+        waves[target] = other.waves[otherId];
+        kj[target] = other.kj[otherId];
+        hdir[target] = other.hdir[otherId];
+        vdir[target] = other.vdir[otherId];
+        return target;
+    }
+
+    /**
+     * Get session id from its key.
+     *
+     * @param key The session key.
+     * @return The session id, {@link #UNKNOWN} if none.
+     */
+    synchronized int getId(int key)
+    {
+        return ids.get(key, UNKNOWN);
+    }
+
+    /**
+     * Get a lightweight view on session data.
+     *
+     * @param id The session id.
+     * @return The session data view.
+     */
+    SessionData get(int id)
+    {
+        return new SessionData(this, id);
+    }
+
+    /**
+     * Get the sessions count.
+     *
+     * @return The sessions count.
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Remove all sessions.
+     */
+    synchronized void clear()
+    {
+        ids.clear();
+        Arrays.fill(start, 0, count, null);
+        Arrays.fill(time, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Write all sessions to snapshot.
+     *
+     * @param output The snapshot output.
+     * @throws IOException If write error.
+     */
+    synchronized void write(DataOutput output) throws IOException
+    {
+        output.writeInt(count);
+        for (int id = 0; id < count; id++)
+        {
+            SessionsSnapshot.writeString(output, start[id]);
+            SessionsSnapshot.writeString(output, time[id]);
+        }
+        writeColumn(output, keys);
+        writeColumn(output, md);
+        writeColumn(output, mf);
+        writeColumn(output, hmin);
+        writeColumn(output, hmax);
+        writeColumn(output, p);
+        writeColumn(output, coef);
+        writeColumn(output, bft);
+        writeColumn(output, score);
+        writeColumn(output, waves);
+        writeColumn(output, kj);
+        output.write(hdir, 0, count);
+        output.write(vdir, 0, count);
+    }
+
+    /**
+     * Read all sessions from snapshot, replacing current ones.
+     *
+     * @param buffer The snapshot buffer, as written by {@link #write(DataOutput)}.
+     */
+    synchronized void read(ByteBuffer buffer)
+    {
+        clear();
+
+        final int n = buffer.getInt();
+        ensureCapacity(n);
+        for (int id = 0; id < n; id++)
+        {
+            start[id] = SessionsSnapshot.readString(buffer);
+            time[id] = SessionsSnapshot.readString(buffer);
+        }
+        readColumn(buffer, keys, n);
+        for (int id = 0; id < n; id++)
+        {
+            setKey(id, keys[id]);
+        }
+        readColumn(buffer, md, n);
+        readColumn(buffer, mf, n);
+        readColumn(buffer, hmin, n);
+        readColumn(buffer, hmax, n);
+        readColumn(buffer, p, n);
+        readColumn(buffer, coef, n);
+        readColumn(buffer, bft, n);
+        readColumn(buffer, score, n);
+        readColumn(buffer, waves, n);
+        readColumn(buffer, kj, n);
+        buffer.get(hdir, 0, n);
+        buffer.get(vdir, 0, n);
+        count = n;
+    }
+
+    synchronized int getKey(int id)
+    {
+        return keys[id];
+    }
+
+    synchronized String getStart(int id)
+    {
+        return start[id];
+    }
+
+    synchronized String getTime(int id)
+    {
+        return time[id];
+    }
+
+    synchronized double getMd(int id)
+    {
+        return md[id];
+    }
+
+    synchronized double getMf(int id)
+    {
+        return mf[id];
+    }
+
+    synchronized int getCoef(int id)
+    {
+        return coef[id];
+    }
+
+    synchronized double getHmin(int id)
+    {
+        return hmin[id];
+    }
+
+    synchronized double getHmax(int id)
+    {
+        return hmax[id];
+    }
+
+    synchronized double getP(int id)
+    {
+        return p[id];
+    }
+
+    synchronized String getHdir(int id)
+    {
+        return getDirection(hdir[id]);
+    }
+
+    synchronized String getVdir(int id)
+    {
+        return getDirection(vdir[id]);
+    }
+
+    synchronized int getBft(int id)
+    {
+        return bft[id];
+    }
+
+    synchronized int getKj(int id)
+    {
+        return kj[id];
+    }
+
+    synchronized int getScore(int id)
+    {
+        return score[id];
+    }
+
+    synchronized int getWaves(int id)
+    {
+        return waves[id];
+    }
+
+    /**
+     * Decode direction index.
+     *
+     * @param index The direction index.
+     * @return The direction code, empty if unknown.
+     */
+    private static String getDirection(byte index)
+    {
+        if (index < 0)
+        {
+            return "";
+        }
+        return DIRECTIONS[index];
+    }
+
+    /**
+     * Ensure columns can hold the required sessions count.
+     *
+     * @param capacity The required capacity.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > keys.length)
+        {
+            final int size = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, size);
+            start = Arrays.copyOf(start, size);
+            time = Arrays.copyOf(time, size);
+            md = Arrays.copyOf(md, size);
+            mf = Arrays.copyOf(mf, size);
+            hmin = Arrays.copyOf(hmin, size);
+            hmax = Arrays.copyOf(hmax, size);
+            p = Arrays.copyOf(p, size);
+            coef = Arrays.copyOf(coef, size);
+            bft = Arrays.copyOf(bft, size);
+            score = Arrays.copyOf(score, size);
+            waves = Arrays.copyOf(waves, size);
+            kj = Arrays.copyOf(kj, size);
+            hdir = Arrays.copyOf(hdir, size);
+            vdir = Arrays.copyOf(vdir, size);
+        }
+    }
+
+    private void writeColumn(DataOutput output, double[] column) throws IOException
+    {
+        for (int id = 0; id < count; id++)
+        {
+            output.writeDouble(column[id]);
+        }
+    }
+
+    private void writeColumn(DataOutput output, int[] column) throws IOException
+    {
+        for (int id = 0; id < count; id++)
+        {
+            output.writeInt(column[id]);
+        }
+    }
+
+    private static void readColumn(ByteBuffer buffer, double[] column, int n)
+    {
+        buffer.asDoubleBuffer().get(column, 0, n);
+        buffer.position(buffer.position() + n * Double.BYTES);
+    }
+
+    private static void readColumn(ByteBuffer buffer, int[] column, int n)
+    {
+        buffer.asIntBuffer().get(column, 0, n);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+    }
+}
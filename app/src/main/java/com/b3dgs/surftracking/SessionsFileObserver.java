@@ -16,40 +16,36 @@
  */
 package com.b3dgs.surftracking;
 
-import android.os.AsyncTask;
-import android.view.LayoutInflater;
-import android.view.View;
-
-import java.io.File;
-import java.util.ArrayList;
+import android.os.FileObserver;
 
 /**
- * Load sessions interface.
+ * Observe sessions folder for sessions file changes, written in place or replaced.
  */
-public final class LoadSessionsTask extends AsyncTask<Void, Integer, ArrayList<View>>
+final class SessionsFileObserver extends FileObserver
 {
-    private final File folder;
-    private final LayoutInflater inflater;
-    private final SessionsLoader loader;
-
-    LoadSessionsTask(File folder, LayoutInflater inflater, SessionsLoader loader)
-    {
-        super();
+    private static final int EVENTS = CLOSE_WRITE | MOVED_TO;
 
-        this.folder = folder;
-        this.inflater = inflater;
-        this.loader = loader;
-    }
+    private final Runnable listener;
 
-    @Override
-    protected ArrayList<View> doInBackground(Void... voids)
+    /**
+     * Create observer. Must be started with {@link #startWatching()} and kept referenced while watching.
+     *
+     * @param folder The sessions folder.
+     * @param listener The change listener, called from observer thread.
+     */
+    SessionsFileObserver(String folder, Runnable listener)
     {
-        return loader.loadSessions(folder, inflater);
+        super(folder, EVENTS);
+
+        this.listener = listener;
     }
 
     @Override
-    protected void onPostExecute(ArrayList<View> views)
+    public void onEvent(int event, String path)
     {
-        loader.onSessionsLoaded(views);
+        if (Constant.FILE_SESSIONS.equals(path))
+        {
+            listener.run();
+        }
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Represents the sessions of a month, sorted by session key.
+ */
+final class SessionsMonth
+{
+    private final int year;
+    private final int month;
+    private int[] keys;
+    private int[] ids;
+    private int count;
+
+    /**
+     * Get the month key of a session.
+     *
+     * @param session The session key.
+     * @return The month key, as {@link #getKey()}.
+     */
+    static int getMonthKey(int session)
+    {
+        return getMonthKey(SessionKey.getYear(session), SessionKey.getMonth(session));
+    }
+
+    private static int getMonthKey(int year, int month)
+    {
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * Create month.
+     *
+     * @param year The year value.
+     * @param month The month value (from 1 to 12).
+     * @param capacity The expected sessions count.
+     */
+    SessionsMonth(int year, int month, int capacity)
+    {
+        super();
+
+        this.year = year;
+        this.month = month;
+        keys = new int[capacity];
+        ids = new int[capacity];
+    }
+
+    /**
+     * Add a session, keeping sessions sorted by key.
+     *
+     * @param key The session key.
+     * @param id The session id.
+     */
+    void add(int key, int id)
+    {
+        if (count == keys.length)
+        {
+            keys = Arrays.copyOf(keys, Math.max(4, count * 2));
+            ids = Arrays.copyOf(ids, keys.length);
+        }
+        int i = count;
+        while (i > 0 && keys[i - 1] > key)
+        {
+            keys[i] = keys[i - 1];
+            ids[i] = ids[i - 1];
+            i--;
+        }
+        keys[i] = key;
+        ids[i] = id;
+        count++;
+    }
+
+    /**
+     * Merge sessions of the same month, when month is split in sessions file.
+     *
+     * @param other The other part of this month.
+     * @return The merged month, this month being left unchanged.
+     */
+    SessionsMonth merge(SessionsMonth other)
+    {
+        final SessionsMonth merged = new SessionsMonth(year, month, count + other.count);
+        for (int i = 0; i < count; i++)
+        {
+            merged.add(keys[i], ids[i]);
+        }
+        for (int i = 0; i < other.count; i++)
+        {
+            merged.add(other.keys[i], other.ids[i]);
+        }
+        return merged;
+    }
+
+    /**
+     * Get the year value.
+     *
+     * @return The year value.
+     */
+    int getYear()
+    {
+        return year;
+    }
+
+    /**
+     * Get the month value.
+     *
+     * @return The month value (from 1 to 12).
+     */
+    int getMonth()
+    {
+        return month;
+    }
+
+    /**
+     * Get the sessions count.
+     *
+     * @return The sessions count.
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Get the session key.
+     *
+     * @param index The session index (sorted by key).
+     * @return The session key.
+     */
+    int getKey(int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * Get the session id.
+     *
+     * @param index The session index (sorted by key).
+     * @return The session id.
+     */
+    int getId(int index)
+    {
+        return ids[index];
+    }
+
+    /**
+     * Get the month calendar.
+     *
+     * @return The month calendar.
+     */
+    Calendar getCalendar()
+    {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.YEAR, year);
+        calendar.set(Calendar.MONTH, month - 1);
+        return calendar;
+    }
+
+    /**
+     * Get the month key, ordered by date.
+     *
+     * @return The month key.
+     */
+    int getKey()
+    {
+        return getMonthKey(year, month);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Streaming sessions file parser. Each month is notified as soon as it has been read.
+ * <p>
+ * Multiple sessions a day are suffixed by their order in the day ("-1", "-2"...).
+ * </p>
+ */
+final class SessionsParser
+{
+    private static final int DEPTH_YEAR = 2;
+    private static final int DEPTH_SESSION = 3;
+    private static final int DAYS = 32;
+    private static final String ATT_DATE = "date";
+
+    /**
+     * Parse number from text range.
+     *
+     * @param text The text to parse.
+     * @param start The first char index.
+     * @param end The last char index (excluded).
+     * @return The parsed number.
+     */
+    private static int parseNumber(String text, int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                value = value * 10 + c - '0';
+            }
+        }
+        return value;
+    }
+
+    /** Sessions count per day for current month. */
+    private final int[] count = new int[DAYS];
+    /** Sessions order per day for current month. */
+    private final int[] order = new int[DAYS];
+    private final SessionStore store;
+    private final Consumer<SessionsMonth> listener;
+    private int[] days = new int[DAYS];
+    private int[] ids = new int[DAYS];
+    private int sessions;
+    private int year;
+    private int month;
+
+    /**
+     * Create parser.
+     *
+     * @param store The store receiving sessions data.
+     * @param listener The month listener, called for each completed month.
+     */
+    SessionsParser(SessionStore store, Consumer<SessionsMonth> listener)
+    {
+        super();
+
+        this.store = store;
+        this.listener = listener;
+    }
+
+    /**
+     * Parse sessions.
+     *
+     * @param input The sessions input.
+     * @throws XmlPullParserException If invalid XML.
+     * @throws IOException If read error.
+     */
+    void parse(InputStream input) throws XmlPullParserException, IOException
+    {
+        final XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(input, null);
+
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT)
+        {
+            if (event == XmlPullParser.START_TAG)
+            {
+                if (parser.getDepth() == DEPTH_YEAR)
+                {
+                    final String name = parser.getName();
+                    year = parseNumber(name, 0, name.length());
+                }
+                else if (parser.getDepth() == DEPTH_SESSION)
+                {
+                    handleSession(parser);
+                }
+            }
+            else if (event == XmlPullParser.END_TAG && parser.getDepth() == DEPTH_YEAR)
+            {
+                flushMonth();
+            }
+            event = parser.next();
+        }
+    }
+
+    /**
+     * Handle current session element.
+     *
+     * @param parser The parser reference.
+     */
+    private void handleSession(XmlPullParser parser)
+    {
+        final String monthDay = parser.getAttributeValue(null, ATT_DATE);
+        final int separator = monthDay.indexOf('-');
+        final int current = parseNumber(monthDay, 0, separator);
+        if (current != month)
+        {
+            flushMonth();
+            month = current;
+        }
+        if (sessions == days.length)
+        {
+            days = Arrays.copyOf(days, sessions * 2);
+            ids = Arrays.copyOf(ids, sessions * 2);
+        }
+        final int day = parseNumber(monthDay, separator + 1, monthDay.length());
+        days[sessions] = day;
+        ids[sessions] = store.add(attribute -> parser.getAttributeValue(null, attribute));
+        count[day]++;
+        sessions++;
+    }
+
+    /**
+     * Notify current month if not empty and prepare next one.
+     */
+    private void flushMonth()
+    {
+        if (sessions > 0)
+        {
+            final SessionsMonth current = new SessionsMonth(year, month, sessions);
+            for (int i = 0; i < sessions; i++)
+            {
+                final int day = days[i];
+                int key = SessionKey.of(year, month, day, 0);
+                if (count[day] > 1) // Multiple sessions a day
+                {
+                    key = SessionKey.of(year, month, day, ++order[day]);
+                }
+                store.setKey(ids[i], key);
+                current.add(key, ids[i]);
+            }
+            Arrays.fill(count, 0);
+            Arrays.fill(order, 0);
+            sessions = 0;
+
+            listener.accept(current);
+        }
+        month = 0;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseBooleanArray;
+
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Prefetch, when main thread is idle, the first gallery row of the sessions displayed by the calendar, so the gallery
+ * shows its thumbnails as soon as a session is selected.
+ * <p>
+ * Work is bounded: a few sessions per idle pass, a few thumbnail generations per pass, and preloaded thumbnails are
+ * kept in a ring sized by a memory budget. Sessions are prefetched once, except when thumbnails were not available
+ * yet, which are retried on next {@link #schedule()}, or when their preloaded thumbnails have been evicted from the
+ * ring.
+ * </p>
+ */
+final class SessionsPrefetcher extends RecyclerView.OnScrollListener implements MessageQueue.IdleHandler
+{
+    /** Sessions handled per idle pass. */
+    private static final int SESSIONS_PER_IDLE = 2;
+    /** Thumbnail generations requested per idle pass. */
+    private static final int GENERATIONS_PER_IDLE = 3;
+    /** Preloaded thumbnails memory budget. */
+    private static final long BUDGET = 8L * 1024L * 1024L;
+    private static final int BYTES_PER_PIXEL = 2;
+
+    private final Queue<Integer> pending = new ArrayDeque<>();
+    private final SparseBooleanArray done = new SparseBooleanArray();
+    private final RequestManager glide;
+    private final MediaManifest manifest;
+    private final ThumbnailCache cache;
+    private final MonthsAdapter months;
+    private final LinearLayoutManager layout;
+    private final RequestOptions options;
+    private final int cellSize;
+    private final Target<?>[] targets;
+    /** Session key of each preloaded target. */
+    private final int[] sessions;
+    private int next;
+    private boolean scheduled;
+
+    /**
+     * Create prefetcher.
+     *
+     * @param glide The request manager.
+     * @param manifest The media manifest.
+     * @param cache The thumbnails cache.
+     * @param months The months adapter.
+     * @param layout The months layout.
+     * @param cellSize The gallery thumbnail size in pixels.
+     */
+    SessionsPrefetcher(RequestManager glide,
+                       MediaManifest manifest,
+                       ThumbnailCache cache,
+                       MonthsAdapter months,
+                       LinearLayoutManager layout,
+                       int cellSize)
+    {
+        super();
+
+        this.glide = glide;
+        this.manifest = manifest;
+        this.cache = cache;
+        this.months = months;
+        this.layout = layout;
+        this.cellSize = cellSize;
+        options = GalleryAdapter.createOptions(cellSize);
+        final long size = (long) cellSize * cellSize * BYTES_PER_PIXEL;
+        targets = new Target<?>[(int) Math.max(GalleryAdapter.COLUMNS, BUDGET / Math.max(1L, size))];
+        sessions = new int[targets.length];
+    }
+
+    /**
+     * Queue sessions of visible months, and prefetch them when idle. Must be called from UI thread.
+     */
+    void schedule()
+    {
+        final int first = layout.findFirstVisibleItemPosition();
+        final int last = layout.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION)
+        {
+            return;
+        }
+        pending.clear();
+        for (int position = first; position <= last && position < months.getItemCount(); position++)
+        {
+            final SessionsMonth month = months.get(position);
+            for (int i = 0; i < month.size(); i++)
+            {
+                final int key = month.getKey(i);
+                if (!done.get(key))
+                {
+                    pending.add(key);
+                }
+            }
+        }
+        if (!pending.isEmpty() && !scheduled)
+        {
+            scheduled = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Forget prefetched sessions as media manifest has been rebuilt, and schedule again. Must be called from UI
+     * thread.
+     */
+    void reset()
+    {
+        done.clear();
+        schedule();
+    }
+
+    /**
+     * Stop prefetching and release preloaded thumbnails. Must be called from UI thread.
+     */
+    void dispose()
+    {
+        if (scheduled)
+        {
+            Looper.myQueue().removeIdleHandler(this);
+            scheduled = false;
+        }
+        pending.clear();
+        done.clear();
+        for (int i = 0; i < targets.length; i++)
+        {
+            if (targets[i] != null)
+            {
+                glide.clear(targets[i]);
+                targets[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Prefetch session first gallery row.
+     *
+     * @param session The session key.
+     * @param generations The remaining thumbnail generations allowed.
+     * @return The remaining thumbnail generations allowed.
+     */
+    private int prefetch(int session, int generations)
+    {
+        final List<MediaManifest.Media> media = manifest.getMedia(session);
+        boolean complete = !media.isEmpty();
+        int remaining = generations;
+        for (int i = 0; i < GalleryAdapter.COLUMNS && i < media.size(); i++)
+        {
+            if (!cache.isCached(media.get(i), ThumbnailCache.MEDIUM))
+            {
+                complete = false;
+                if (remaining == 0)
+                {
+                    continue;
+                }
+                remaining--;
+            }
+            final String thumbnail = cache.get(media.get(i), ThumbnailCache.MEDIUM);
+            if (thumbnail != null)
+            {
+                preload(session, thumbnail);
+            }
+        }
+        if (complete)
+        {
+            done.put(session, true);
+        }
+        return remaining;
+    }
+
+    /**
+     * Preload thumbnail in ring, evicted session being prefetched again on next {@link #schedule()}.
+     *
+     * @param session The session key.
+     * @param thumbnail The thumbnail path.
+     */
+    private void preload(int session, String thumbnail)
+    {
+        if (targets[next] != null)
+        {
+            glide.clear(targets[next]);
+            done.delete(sessions[next]);
+        }
+        targets[next] = glide.load(thumbnail).apply(options).preload(cellSize, cellSize);
+        sessions[next] = session;
+        next = (next + 1) % targets.length;
+    }
+
+    @Override
+    public boolean queueIdle()
+    {
+        int generations = GENERATIONS_PER_IDLE;
+        for (int i = 0; i < SESSIONS_PER_IDLE && !pending.isEmpty(); i++)
+        {
+            generations = prefetch(pending.poll().intValue(), generations);
+        }
+        scheduled = !pending.isEmpty();
+        return scheduled;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState)
+    {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE)
+        {
+            schedule();
+        }
+    }
+}
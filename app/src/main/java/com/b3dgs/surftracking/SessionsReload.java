@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Sessions file reload, diffed per session against the loaded sessions so only affected months are updated.
+ * <p>
+ * Sessions ids of the loaded store are kept: changed sessions are updated in place, new ones are added, and removed
+ * ones lose their key.
+ * </p>
+ */
+final class SessionsReload
+{
+    /**
+     * Parse sessions file and diff it against current sessions. Must be called from background, current store not
+     * being modified meanwhile.
+     *
+     * @param current The current sessions.
+     * @param source The sessions file.
+     * @return The reload result.
+     * @throws XmlPullParserException If invalid XML.
+     * @throws IOException If read error.
+     */
+    static SessionsReload compute(SessionStore current, File source) throws XmlPullParserException, IOException
+    {
+        final SessionStore parsed = new SessionStore();
+        final SparseArray<SessionsMonth> months = new SparseArray<>();
+        try (InputStream input = new FileInputStream(source))
+        {
+            final SessionsParser parser = new SessionsParser(parsed, month ->
+            {
+                final SessionsMonth previous = months.get(month.getKey());
+                months.put(month.getKey(), previous == null ? month : previous.merge(month));
+            });
+            parser.parse(input);
+        }
+
+        final SparseBooleanArray affected = new SparseBooleanArray();
+        boolean added = false;
+        for (int m = 0; m < months.size(); m++)
+        {
+            final SessionsMonth month = months.valueAt(m);
+            for (int i = 0; i < month.size(); i++)
+            {
+                final int id = current.getId(month.getKey(i));
+                if (id == SessionStore.UNKNOWN)
+                {
+                    added = true;
+                    affected.put(month.getKey(), true);
+                }
+                else if (!current.isSame(id, parsed, month.getId(i)))
+                {
+                    affected.put(month.getKey(), true);
+                }
+            }
+        }
+
+        int[] removed = new int[0];
+        int count = 0;
+        for (int id = 0; id < current.size(); id++)
+        {
+            final int key = current.getKey(id);
+            if (current.getId(key) == id && parsed.getId(key) == SessionStore.UNKNOWN)
+            {
+                if (count == removed.length)
+                {
+                    removed = Arrays.copyOf(removed, Math.max(4, count * 2));
+                }
+                removed[count++] = key;
+                affected.put(SessionsMonth.getMonthKey(key), true);
+            }
+        }
+        return new SessionsReload(parsed, months, affected, Arrays.copyOf(removed, count), added);
+    }
+
+    private final SessionStore parsed;
+    private final SparseArray<SessionsMonth> months;
+    private final SparseBooleanArray affected;
+    private final int[] removed;
+    private final boolean added;
+
+    /**
+     * Create reload result.
+     *
+     * @param parsed The parsed sessions.
+     * @param months The parsed months, by month key.
+     * @param affected The affected months keys.
+     * @param removed The removed sessions keys.
+     * @param added <code>true</code> if sessions were added.
+     */
+    private SessionsReload(SessionStore parsed,
+                           SparseArray<SessionsMonth> months,
+                           SparseBooleanArray affected,
+                           int[] removed,
+                           boolean added)
+    {
+        super();
+
+        this.parsed = parsed;
+        this.months = months;
+        this.affected = affected;
+        this.removed = removed;
+        this.added = added;
+    }
+
+    /**
+     * Apply changes to current sessions and update affected months only. Must be called from UI thread.
+     *
+     * @param current The current sessions.
+     * @param adapter The months adapter.
+     */
+    void apply(SessionStore current, MonthsAdapter adapter)
+    {
+        for (final int key : removed)
+        {
+            current.removeKey(key);
+        }
+        for (int m = 0; m < affected.size(); m++)
+        {
+            final SessionsMonth month = months.get(affected.keyAt(m));
+            if (month == null)
+            {
+                adapter.remove(affected.keyAt(m));
+            }
+            else
+            {
+                adapter.put(merge(current, month));
+            }
+        }
+    }
+
+    /**
+     * Check if sessions were added.
+     *
+     * @return <code>true</code> if sessions were added, <code>false</code> else.
+     */
+    boolean isAdded()
+    {
+        return added;
+    }
+
+    /**
+     * Get parsed sessions, left unchanged when applied.
+     *
+     * @return The parsed sessions.
+     */
+    SessionStore getParsed()
+    {
+        return parsed;
+    }
+
+    /**
+     * Get parsed months, referencing parsed sessions.
+     *
+     * @return The parsed months.
+     */
+    Collection<SessionsMonth> getMonths()
+    {
+        final Collection<SessionsMonth> list = new ArrayList<>(months.size());
+        for (int m = 0; m < months.size(); m++)
+        {
+            list.add(months.valueAt(m));
+        }
+        return list;
+    }
+
+    /**
+     * Merge parsed month sessions into current sessions.
+     *
+     * @param current The current sessions.
+     * @param month The parsed month.
+     * @return The month referencing current sessions.
+     */
+    private SessionsMonth merge(SessionStore current, SessionsMonth month)
+    {
+        final SessionsMonth merged = new SessionsMonth(month.getYear(), month.getMonth(), month.size());
+        for (int i = 0; i < month.size(); i++)
+        {
+            final int key = month.getKey(i);
+            int id = current.getId(key);
+            if (id == SessionStore.UNKNOWN)
+            {
+                id = current.copy(SessionStore.UNKNOWN, parsed, month.getId(i));
+                current.setKey(id, key);
+            }
+            else if (!current.isSame(id, parsed, month.getId(i)))
+            {
+                current.copy(id, parsed, month.getId(i));
+            }
+            merged.add(key, id);
+        }
+        return merged;
+    }
+}
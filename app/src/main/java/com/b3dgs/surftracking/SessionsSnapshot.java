@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the parsed sessions, stored in app storage to skip the sessions file parsing.
+ * <p>
+ * Snapshot is keyed by the sessions file size and last modification time, so checking it does not read the sessions
+ * file, and is memory mapped when read.
+ * </p>
+ */
+final class SessionsSnapshot
+{
+    private static final int MAGIC = 0x53555246;
+    private static final int VERSION = 4;
+    private static final String TEMP = ".tmp";
+    /** Serializes saves sharing the temporary file. */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Write string as UTF-8 bytes prefixed by its length.
+     *
+     * @param output The output reference.
+     * @param value The string value.
+     * @throws IOException If write error.
+     */
+    static void writeString(DataOutput output, String value) throws IOException
+    {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param buffer The buffer reference.
+     * @return The string value.
+     */
+    static String readString(ByteBuffer buffer)
+    {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final File snapshot;
+    private final File source;
+    private long size;
+    private long modified;
+
+    /**
+     * Create snapshot.
+     *
+     * @param snapshot The snapshot file.
+     * @param source The sessions source file.
+     */
+    SessionsSnapshot(File snapshot, File source)
+    {
+        super();
+
+        this.snapshot = snapshot;
+        this.source = source;
+    }
+
+    /**
+     * Read the current source size and last modification time. Must be called before parsing the source to save, so
+     * a source changed meanwhile does not match the saved snapshot.
+     */
+    void stamp()
+    {
+        size = source.length();
+        modified = source.lastModified();
+    }
+
+    /**
+     * Load snapshot if matching the current source, notifying each month once fully read. Store is cleared if
+     * snapshot is corrupted.
+     *
+     * @param store The store receiving sessions data.
+     * @param listener The month listener.
+     * @return <code>true</code> if loaded, <code>false</code> if snapshot is missing, outdated or corrupted.
+     * @throws IOException If read error.
+     */
+    boolean load(SessionStore store, Consumer<SessionsMonth> listener) throws IOException
+    {
+        stamp();
+
+        if (!snapshot.isFile())
+        {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ))
+        {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION
+                || buffer.getLong() != size
+                || buffer.getLong() != modified)
+            {
+                return false;
+            }
+            store.read(buffer);
+
+            final int count = buffer.getInt();
+            final List<SessionsMonth> months = new ArrayList<>(count);
+            for (int m = 0; m < count; m++)
+            {
+                final int year = buffer.getInt();
+                final int value = buffer.getInt();
+                final int sessions = buffer.getInt();
+                final SessionsMonth month = new SessionsMonth(year, value, sessions);
+                for (int s = 0; s < sessions; s++)
+                {
+                    final int id = buffer.getInt();
+                    month.add(store.getKey(id), id);
+                }
+                months.add(month);
+            }
+            months.forEach(listener);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e)
+        {
+            Util.log("Corrupted sessions snapshot !", e);
+            store.clear();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Save snapshot of the parsed source. Must be called after {@link #stamp()}. Can be called concurrently, last save
+     * replacing the snapshot.
+     *
+     * @param store The store containing parsed sessions.
+     * @param months The parsed months.
+     * @throws IOException If write error.
+     */
+    void save(SessionStore store, Collection<SessionsMonth> months) throws IOException
+    {
+        synchronized (LOCK)
+        {
+            write(store, months);
+        }
+    }
+
+    /**
+     * Write snapshot to temporary file, then replace snapshot.
+     *
+     * @param store The store containing parsed sessions.
+     * @param months The parsed months.
+     * @throws IOException If write error.
+     */
+    private void write(SessionStore store, Collection<SessionsMonth> months) throws IOException
+    {
+        final File temp = new File(snapshot.getPath() + TEMP);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(size);
+            output.writeLong(modified);
+            store.write(output);
+
+            output.writeInt(months.size());
+            for (final SessionsMonth month : months)
+            {
+                output.writeInt(month.getYear());
+                output.writeInt(month.getMonth());
+                output.writeInt(month.size());
+                for (int s = 0; s < month.size(); s++)
+                {
+                    output.writeInt(month.getId(s));
+                }
+            }
+        }
+        if (!temp.renameTo(snapshot))
+        {
+            throw new IOException("Unable to write snapshot: " + snapshot);
+        }
+    }
+}
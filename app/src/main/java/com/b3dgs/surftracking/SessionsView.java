@@ -16,85 +16,96 @@
  */
 package com.b3dgs.surftracking;
 
-import android.content.Context;
 import android.content.res.Configuration;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
-import android.os.Handler;
-import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.GridView;
-import android.widget.LinearLayout;
-import android.widget.TextView;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import com.bumptech.glide.Glide;
+
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.NavigableSet;
-import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 /**
  * Represents the sessions view.
  */
-final class SessionsView implements SessionsFolderListener, SessionsLoader
+final class SessionsView implements SessionsFolderListener, SessionProvider
 {
+    /** Years parsed at startup, most recent first, when snapshot is outdated. */
+    private static final int NEWEST_YEARS = 2;
+    /** Remaining months to scroll before parsing older years. */
+    private static final int OLDER_THRESHOLD = 3;
+    /** Delay after last sessions file change before reloading it. */
+    private static final long RELOAD_DELAY_MS = 500L;
+
     private final Collection<SessionSelectionListener> listeners = new ArrayList<>();
-    private final Map<String, SessionData> sessionsData = new HashMap<>();
-    private final Map<String, Boolean> multiDetail = new HashMap<>();
-    private final Map<String, Integer> multiDetailAdded = new HashMap<>();
+    private final LoadScheduler scheduler;
+    private final MediaManifest manifest;
+    private final ThumbnailCache cache;
     private final Consumer<Integer> tabChanger;
     private final ArrayList<String> detailItems;
+    private final Runnable reload = this::reload;
 
+    /** Sessions of current load, replaced on each load so stale loads never write to it. Only accessed from UI. */
+    private SessionStore store = new SessionStore();
     private View rootView;
-    private LinearLayout monthsLayout;
+    private MonthsAdapter monthsAdapter;
+    private MonthsInserter monthsInserter;
+    private MonthsResizer monthsResizer;
+    private SessionsPrefetcher prefetcher;
+    private ThumbnailIndex thumbnails;
+    private LinearLayoutManager layout;
+    private PendingYears pendingYears;
+    private SessionsFileObserver observer;
+    private boolean loaded;
+    /** <code>true</code> if last load failed, next reload being a full load. */
+    private boolean failed;
+    private boolean reloading;
+    private File snapshotFile;
+    private File yearsFile;
     private String sessionsFolder;
 
     /**
      * Create session view.
      *
+     * @param scheduler The loading scheduler.
+     * @param manifest The media manifest.
+     * @param cache The thumbnails cache.
      * @param tabChanger The function to change tab.
      * @param detailItems The items data.
      */
-    SessionsView(Consumer<Integer> tabChanger, ArrayList<String> detailItems)
+    SessionsView(LoadScheduler scheduler,
+                 MediaManifest manifest,
+                 ThumbnailCache cache,
+                 Consumer<Integer> tabChanger,
+                 ArrayList<String> detailItems)
     {
         super();
 
+        this.scheduler = scheduler;
+        this.manifest = manifest;
+        this.cache = cache;
         this.tabChanger = tabChanger;
         this.detailItems = detailItems;
     }
 
-    /**
-     * Get the sessions data.
-     *
-     * @return The sessions data.
-     */
-    public Map<String, SessionData> getData()
+    @Override
+    public SessionStore getData()
     {
-        return sessionsData;
+        return store;
     }
 
     /**
@@ -121,280 +132,426 @@ final class SessionsView implements SessionsFolderListener, SessionsLoader
             return rootView;
         }
         rootView = inflater.inflate(R.layout.fragment_sessions, container, false);
-        multiDetail.clear();
+        final File filesDir = inflater.getContext().getFilesDir();
+        snapshotFile = new File(filesDir, Constant.FILE_SNAPSHOT);
+        yearsFile = new File(filesDir, Constant.FILE_YEARS);
+        thumbnails = new ThumbnailIndex(new File(filesDir, Constant.FILE_THUMBNAILS),
+                                        () -> rootView.post(monthsAdapter::notifyDataSetChanged));
+        manifest.addListener(() -> scheduler.cpu(LoadScheduler.PRIORITY_SCAN, () ->
+        {
+            thumbnails.build(manifest);
+            rootView.post(prefetcher::reset);
+        }));
+        cache.addListener(() -> rootView.post(() ->
+        {
+            monthsAdapter.notifyDataSetChanged();
+            prefetcher.schedule();
+        }));
+
+        final RecyclerView months = rootView.findViewById(R.id.months);
+        layout = new LinearLayoutManager(inflater.getContext());
+        months.setLayoutManager(layout);
+        months.setHasFixedSize(true);
+        monthsResizer = new MonthsResizer(inflater.getContext().getResources().getConfiguration());
+        monthsAdapter = new MonthsAdapter(thumbnails, cache, this::getInfo, createDetailListener(), monthsResizer);
+        months.setAdapter(monthsAdapter);
+        prefetcher = new SessionsPrefetcher(Glide.with(inflater.getContext()),
+                                            manifest,
+                                            cache,
+                                            monthsAdapter,
+                                            layout,
+                                            GalleryAdapter.getCellSize(inflater.getContext()));
+        months.addOnScrollListener(prefetcher);
+        months.addOnScrollListener(new RecyclerView.OnScrollListener()
+        {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy)
+            {
+                loadOlderYears();
+            }
+        });
+        monthsInserter = new MonthsInserter(monthsAdapter::add, () -> getVisibleMonth(layout));
 
-        final File folder = new File(sessionsFolder);
-        monthsLayout = rootView.findViewById(R.id.months);
-        LoadSessionsTask task = new LoadSessionsTask(folder, inflater, this);
-        task.execute();
+        load();
 
         return rootView;
     }
 
     /**
-     * Create view.
-     *
-     * @param inflater The inflater reference.
+     * Load current sessions folder in current generation: months are posted to UI thread as soon as loaded, the
+     * thumbnails index is restored after. Loading fills its own store, stale loading is aborted at next month.
      */
-    void create(LayoutInflater inflater,
-                LinearLayout parent,
-                NavigableMap<String, NavigableMap<String, NavigableSet<String>>> sessions)
+    private void load()
     {
-        for (final String year : sessions.descendingKeySet())
+        final String root = sessionsFolder;
+        final int generation = scheduler.getGeneration();
+        final SessionStore target = new SessionStore();
+        store = target;
+        loaded = false;
+        failed = false;
+        if (observer != null)
         {
-            final NavigableMap<String, NavigableSet<String>> months = sessions.get(year);
-            if (months != null)
+            observer.stopWatching();
+        }
+        observer = new SessionsFileObserver(root, () -> rootView.post(this::scheduleReload));
+        observer.startWatching();
+        final Consumer<SessionsMonth> listener = month ->
+        {
+            if (!scheduler.isCurrent(generation))
             {
-                for (final String month : months.descendingKeySet())
-                {
-                    final Calendar calendar = Calendar.getInstance();
-                    calendar.set(Calendar.YEAR, Integer.parseInt(year));
-                    calendar.set(Calendar.MONTH, Integer.parseInt(month) - 1);
-
-                    parent.addView(createMonth(months.get(month), inflater, calendar));
-                }
+                throw new CancellationException();
             }
-        }
+            scheduler.post(generation, () -> onMonthLoaded(month));
+        };
+        final File folder = new File(root);
+        scheduler.supplyIo(LoadScheduler.PRIORITY_SESSIONS, () -> loadSessions(folder, target, generation, listener))
+                 .whenComplete((pending, failure) -> scheduler.post(generation, () ->
+                 {
+                     if (failure == null)
+                     {
+                         onSessionsLoaded(pending);
+                     }
+                     else
+                     {
+                         loaded = true;
+                         failed = true;
+                     }
+                 }));
+
+        scheduler.io(LoadScheduler.PRIORITY_INDEX, () ->
+        {
+            thumbnails.restore(root);
+            if (root.equals(manifest.getRoot()))
+            {
+                thumbnails.build(manifest);
+            }
+        });
     }
 
-    @Override
-    public ArrayList<View> loadSessions(File folder, LayoutInflater inflater)
+    /**
+     * Load sessions from background, each month being notified as soon as read. All sessions are read from snapshot
+     * if up to date, else only the most recent years are parsed.
+     *
+     * @param folder The sessions folder.
+     * @param store The store receiving sessions data, owned by this loading.
+     * @param generation The loading generation.
+     * @param listener The month listener.
+     * @return The years remaining to parse, <code>null</code> if all sessions loaded.
+     */
+    private PendingYears loadSessions(File folder, SessionStore store, int generation, Consumer<SessionsMonth> listener)
     {
-        final ArrayList<View> monthsView = new ArrayList<>();
-        sessionsData.clear();
-        multiDetailAdded.clear();
-
-        final File fileData = new File(sessionsFolder, Constant.FILE_SESSIONS);
-        try (InputStream input = new FileInputStream(fileData))
+        final File fileData = new File(folder, Constant.FILE_SESSIONS);
+        final SessionsSnapshot snapshot = new SessionsSnapshot(snapshotFile, fileData);
+        try
         {
-            final NodeList sessionsPerYears = getSessionsPerYears(input);
-            final int yearsNumber = sessionsPerYears.getLength();
-            for (int y = 0; y < yearsNumber; y++)
+            if (snapshot.load(store, listener))
             {
-                final Node yearsNode = sessionsPerYears.item(y);
-                if (yearsNode instanceof Element)
-                {
-                    final String year = yearsNode.getNodeName().replace("_", "");
-
-                    Collection<String> sessions = new TreeSet<>();
-                    String lastMonth = null;
-                    final NodeList sessionsNode = yearsNode.getChildNodes();
-                    final int sessionsNumber = sessionsNode.getLength();
-                    for (int s = sessionsNumber - 1; s >= 0; s--)
-                    {
-                        final Node sessionNode = sessionsNode.item(s);
-                        if (sessionNode instanceof Element)
-                        {
-                            final String monthDay = ((Element) sessionNode).getAttribute("date");
-                            final String month = monthDay.substring(0, monthDay.indexOf('-'));
-                            final String sessionName = year + "-" + monthDay;
-
-                            final SessionData data = new SessionData((Element) sessionNode);
-                            if (multiDetail.containsKey(sessionName)) // Detected as multi session a day
-                            {
-                                if (!multiDetail.get(sessionName)) // First multi session
-                                {
-                                    final String sessionMultiName = sessionName + "-2";
-                                    sessionsData.put(sessionMultiName, sessionsData.get(sessionName));
-                                    sessionsData.remove(sessionName);
-                                    multiDetail.put(sessionName, true);
-                                    multiDetailAdded.put(sessionName, 1);
-                                    sessions.remove(sessionName);
-                                    sessions.add(sessionMultiName);
-                                }
-                                else
-                                {
-                                    multiDetailAdded.put(sessionName, multiDetailAdded.get(sessionName) - 1);
-                                }
-
-                                final String sessionMultiName = sessionName + "-" + multiDetailAdded.get(sessionName);
-                                sessionsData.put(sessionMultiName, data);
-                                if (month.equals(lastMonth))
-                                {
-                                    sessions.add(sessionMultiName);
-                                }
-                            }
-                            else // Single session
-                            {
-                                sessionsData.put(sessionName, data);
-                                multiDetail.put(sessionName, false);
-                                if (lastMonth == null || month.equals(lastMonth))
-                                {
-                                    sessions.add(sessionName);
-                                }
-                            }
-
-                            // Add to calendar on month change
-                            if (lastMonth != null && !month.equals(lastMonth))
-                            {
-                                createMonth(year, lastMonth, sessions, inflater, monthsView);
-
-                                sessions = new TreeSet<>();
-                                lastMonth = month;
-
-                                sessionsData.put(sessionName, data);
-                                multiDetail.put(sessionName, false);
-                                sessions.add(sessionName);
-                            }
-                            if (lastMonth == null)
-                            {
-                                lastMonth = month;
-                            }
-                        }
-                    }
-                    // Add to calendar on year change
-                    createMonth(year, lastMonth, sessions, inflater, monthsView);
-                }
+                return null;
+            }
+            final SessionsYears years = new SessionsYears(yearsFile, fileData);
+            years.open();
+            final PendingYears pending = new PendingYears(snapshot, store, years, generation, listener);
+            while (!pending.stale && pending.next < Math.min(NEWEST_YEARS, years.size()))
+            {
+                pending.parse(pending.next);
+                pending.next++;
+            }
+            if (pending.stale)
+            {
+                return pending;
             }
+            if (pending.next < years.size())
+            {
+                scheduler.io(LoadScheduler.PRIORITY_SCAN, () -> refreshSnapshot(snapshot, fileData, generation));
+                return pending;
+            }
+            pending.save();
+            return null;
         }
-        catch (IOException | ParserConfigurationException | SAXException e)
+        catch (IOException e)
         {
             throw new IllegalArgumentException("XML error", e);
         }
-
-        return monthsView;
-    }
-
-    private void createMonth(String year,
-                             String month,
-                             Collection<String> sessions,
-                             LayoutInflater inflater,
-                             ArrayList<View> monthsView)
-    {
-        final Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.YEAR, Integer.parseInt(year));
-        calendar.set(Calendar.MONTH, Integer.parseInt(month) - 1);
-
-        final View view = createMonth(sessions, inflater, calendar);
-        monthsView.add(view);
     }
 
-    @Override
-    public void onSessionsLoaded(ArrayList<View> views)
+    /**
+     * Parse next older years in parallel, if calendar end is close. Must be called from UI thread.
+     */
+    private void loadOlderYears()
     {
-        final Handler handler = new Handler(Looper.getMainLooper());
-        final Runnable task = () ->
+        final PendingYears pending = pendingYears;
+        if (pending == null
+            || pending.loading
+            || !scheduler.isCurrent(pending.generation)
+            || layout.findLastVisibleItemPosition() < monthsAdapter.getItemCount() - OLDER_THRESHOLD)
         {
-            AtomicInteger i = new AtomicInteger();
-            while (true)
+            return;
+        }
+        pending.loading = true;
+        final int count = Math.min(Runtime.getRuntime().availableProcessors(), pending.years.size() - pending.next);
+        final CompletableFuture<?>[] tasks = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++)
+        {
+            final int year = pending.next + i;
+            tasks[i] = scheduler.cpu(LoadScheduler.PRIORITY_SESSIONS, () -> pending.parse(year));
+        }
+        pending.next += count;
+        CompletableFuture.allOf(tasks).whenComplete((result, failure) -> scheduler.post(pending.generation, () ->
+        {
+            pending.loading = false;
+            if (failure != null)
             {
-                try
-                {
-                    final int v = i.getAndIncrement();
-                    if (v >= views.size())
-                    {
-                        break;
-                    }
-                    handler.post(() -> monthsLayout.addView(views.get(v)));
-                    Thread.sleep(100L);
-                }
-                catch (InterruptedException e)
-                {
-                    Util.log("Interrupted !", e);
-                }
+                pendingYears = null;
             }
-        };
-        new Thread(task, "Add views").start();
+            else if (pending.stale)
+            {
+                pendingYears = null;
+                scheduleReload();
+            }
+            else if (pending.next == pending.years.size())
+            {
+                pendingYears = null;
+                onSessionsLoaded(null);
+            }
+            else
+            {
+                loadOlderYears();
+            }
+        }));
     }
 
     /**
-     * Create session month view.
+     * Parse whole sessions file into its own store and save it as snapshot for next loading, loaded sessions being
+     * left to lazy parsing. Failure is not critical.
      *
-     * @param sessions The month sessions.
-     * @param inflater The inflater reference.
-     * @param month The month calendar.
-     * @return The created month view.
+     * @param snapshot The snapshot reference, stamped before years were indexed.
+     * @param source The sessions file.
+     * @param generation The loading generation.
      */
-    private View createMonth(Collection<String> sessions, LayoutInflater inflater, Calendar month)
+    private void refreshSnapshot(SessionsSnapshot snapshot, File source, int generation)
     {
-        final Context context = inflater.getContext();
-        final CalendarAdapter adapter = new CalendarAdapter(context, month, sessionsFolder, this::getInfo);
-        adapter.setSessions(sessions);
+        final SessionStore parsed = new SessionStore();
+        final Collection<SessionsMonth> months = new ArrayList<>();
+        try (InputStream input = new FileInputStream(source))
+        {
+            final SessionsParser parser = new SessionsParser(parsed, months::add);
+            parser.parse(input);
+        }
+        catch (IOException | XmlPullParserException e)
+        {
+            Util.log("Unable to parse sessions !", e);
+            return;
+        }
+        if (scheduler.isCurrent(generation))
+        {
+            saveSnapshot(snapshot, parsed, months);
+        }
+    }
 
-        final View calendarMonth = inflater.inflate(R.layout.calendar_month, null);
+    /**
+     * Save sessions snapshot for next loading. Failure is not critical.
+     *
+     * @param snapshot The snapshot reference.
+     * @param store The store containing parsed sessions.
+     * @param months The parsed months.
+     */
+    private static void saveSnapshot(SessionsSnapshot snapshot, SessionStore store, Collection<SessionsMonth> months)
+    {
+        try
+        {
+            snapshot.save(store, months);
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to save snapshot !", e);
+        }
+    }
 
-        final GridView gridView = calendarMonth.findViewById(R.id.grid);
-        gridView.setAdapter(adapter);
+    /**
+     * Called on configuration change.
+     *
+     * @param configuration The new configuration.
+     */
+    void onConfigurationChanged(Configuration configuration)
+    {
+        if (monthsResizer != null)
+        {
+            monthsResizer.onConfigurationChanged(configuration);
+        }
+    }
 
-        final TextView title = calendarMonth.findViewById(R.id.title);
-        title.setText(android.text.format.DateFormat.format("MMMM yyyy", month));
+    /**
+     * Stop pending work. Must be called from UI thread.
+     */
+    void dispose()
+    {
+        if (monthsInserter != null)
+        {
+            monthsInserter.cancel();
+        }
+        if (prefetcher != null)
+        {
+            prefetcher.dispose();
+        }
+        if (observer != null)
+        {
+            observer.stopWatching();
+            observer = null;
+            rootView.removeCallbacks(reload);
+        }
+    }
 
-        final AdapterView.OnItemClickListener detailListener = createDetailListener();
-        gridView.setOnItemClickListener(detailListener);
+    /**
+     * Reload sessions file once changes settled. Must be called from UI thread.
+     */
+    private void scheduleReload()
+    {
+        rootView.removeCallbacks(reload);
+        rootView.postDelayed(reload, RELOAD_DELAY_MS);
+    }
 
-        final AtomicInteger oldOrientation = new AtomicInteger(-1);
-        final SensorEventListener rotateListener = new SensorEventListener()
+    /**
+     * Reparse sessions file from background and apply changes to affected months only. Postponed while loading, full
+     * load if last load failed.
+     */
+    private void reload()
+    {
+        if (loaded && failed)
         {
-            @Override
-            public void onSensorChanged(SensorEvent event)
+            monthsInserter.cancel();
+            monthsAdapter.clear();
+            load();
+            return;
+        }
+        if (!loaded || reloading || monthsInserter.isPending() || pendingYears != null && pendingYears.loading)
+        {
+            scheduleReload();
+            return;
+        }
+        reloading = true;
+        pendingYears = null;
+        final String root = sessionsFolder;
+        final int generation = scheduler.getGeneration();
+        final SessionStore current = store;
+        final File source = new File(root, Constant.FILE_SESSIONS);
+        final SessionsSnapshot snapshot = new SessionsSnapshot(snapshotFile, source);
+        scheduler.supplyIo(LoadScheduler.PRIORITY_SESSIONS, () ->
+        {
+            try
             {
-                final int o = context.getResources().getConfiguration().orientation;
-                if (oldOrientation.get() != o)
-                {
-                    resizeGridView(gridView, sessions.size(), o == Configuration.ORIENTATION_PORTRAIT ? 182 : 320);
-                }
-                oldOrientation.set(o);
+                snapshot.stamp();
+                return SessionsReload.compute(current, source);
             }
-
-            @Override
-            public void onAccuracyChanged(Sensor sensor, int accuracy)
+            catch (IOException | XmlPullParserException e)
             {
-                // Nothing to do
+                throw new IllegalArgumentException("XML error", e);
             }
-        };
+        }).whenComplete((result, failure) -> scheduler.post(generation, () ->
+        {
+            reloading = false;
+            if (result != null)
+            {
+                onReloaded(result, root);
+                scheduler.io(LoadScheduler.PRIORITY_INDEX,
+                             () -> saveSnapshot(snapshot, result.getParsed(), result.getMonths()));
+            }
+        }));
+    }
 
-        final SensorManager sm = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
-        if (sm != null)
+    /**
+     * Called from UI thread when sessions file has been reloaded.
+     *
+     * @param result The reload result.
+     * @param root The sessions folder.
+     */
+    private void onReloaded(SessionsReload result, String root)
+    {
+        result.apply(store, monthsAdapter);
+        if (result.isAdded())
         {
-            sm.registerListener(rotateListener,
-                                sm.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR),
-                                SensorManager.SENSOR_DELAY_NORMAL);
+            scheduler.io(LoadScheduler.PRIORITY_SCAN, () -> manifest.build(root));
         }
+    }
 
-        return calendarMonth;
+    /**
+     * Get first visible month key.
+     *
+     * @param layout The months layout.
+     * @return The first visible month key, {@link SessionKey#NONE} if none.
+     */
+    private int getVisibleMonth(LinearLayoutManager layout)
+    {
+        final int position = layout.findFirstVisibleItemPosition();
+        if (position == RecyclerView.NO_POSITION)
+        {
+            return SessionKey.NONE;
+        }
+        return monthsAdapter.getKey(position);
     }
 
-    private SessionData getInfo(String session)
+    /**
+     * Called from UI thread when a month has been loaded.
+     *
+     * @param month The loaded month.
+     */
+    private void onMonthLoaded(SessionsMonth month)
+    {
+        monthsInserter.post(month);
+    }
+
+    /**
+     * Called from UI thread when sessions have been loaded.
+     *
+     * @param pending The years remaining to parse, <code>null</code> if all sessions loaded.
+     */
+    private void onSessionsLoaded(PendingYears pending)
     {
-        if (!sessionsData.containsKey(session))
+        loaded = true;
+        pendingYears = pending;
+        if (pending != null && pending.stale)
         {
-            throw new IllegalArgumentException("Unknown session: " + session);
+            pendingYears = null;
+            scheduleReload();
+        }
+        else if (pending != null)
+        {
+            loadOlderYears();
         }
-        return sessionsData.get(session);
     }
 
-    private void resizeGridView(GridView gridView, int items, int height)
+    private SessionData getInfo(int session)
     {
-        final ViewGroup.LayoutParams params = gridView.getLayoutParams();
-        int rows = (int) Math.ceil(items / (double) 4);
-        params.height = height * rows;
-        gridView.setLayoutParams(params);
+        final int id = store.getId(session);
+        if (id == SessionStore.UNKNOWN)
+        {
+            throw new IllegalArgumentException("Unknown session: " + SessionKey.toName(session));
+        }
+        return store.get(id);
     }
 
     private AdapterView.OnItemClickListener createDetailListener()
     {
         return (parent, v, position, id) ->
         {
-            final TextView name = v.findViewById(R.id.name);
-            if (name.getText().length() > 0)
+            final int session = (int) id;
+            if (session != SessionKey.NONE)
             {
-                final String session = name.getText().toString();
                 detailItems.clear();
 
-                final SessionData data = sessionsData.get(session);
+                final SessionData data = getInfo(session);
                 detailItems.add(data.getStart());
                 detailItems.add(data.getTime());
                 detailItems.add(data.getMd() + " m" + System.lineSeparator() + data.getMf() + " m");
-                detailItems.add(data.getCoef());
+                detailItems.add(String.valueOf(data.getCoef()));
 
                 detailItems.add(data.getKj() + " Kj");
-                detailItems.add(session);
+                detailItems.add(SessionKey.toName(session));
                 detailItems.add(data.getHmin() + " m" + System.lineSeparator() + data.getHmax() + " m");
-                detailItems.add(data.getP() + " sec");
+                detailItems.add(Util.format(data.getP()) + " sec");
                 detailItems.add(String.valueOf(Util.getDirection(data.getHdir())));
                 detailItems.add(Util.getDirection(data.getVdir()) + "_" + data.getBft() + " bft");
-                detailItems.add(data.getS());
-                detailItems.add(data.getVp());
+                detailItems.add(String.valueOf(data.getS()));
+                detailItems.add(String.valueOf(data.getVp()));
 
                 listeners.forEach(l -> l.onSessionSelected(sessionsFolder, session));
                 tabChanger.accept(Constant.ID_GALLERY_VIEW);
@@ -402,19 +559,91 @@ final class SessionsView implements SessionsFolderListener, SessionsLoader
         };
     }
 
-    private static NodeList getSessionsPerYears(InputStream input)
-            throws ParserConfigurationException, SAXException, IOException
-    {
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        final DocumentBuilder db = factory.newDocumentBuilder();
-        final Document doc = db.parse(input);
-        final Element root = doc.getDocumentElement();
-        return root.getChildNodes();
-    }
-
     @Override
     public void onSessionsFolderSelected(String sessionsFolder)
     {
+        dispose();
+        pendingYears = null;
+        reloading = false;
         this.sessionsFolder = sessionsFolder;
+        if (rootView != null)
+        {
+            monthsAdapter.clear();
+            load();
+        }
+    }
+
+    /**
+     * Years remaining to parse, when snapshot was outdated.
+     */
+    private static final class PendingYears
+    {
+        /** Months parsed so far, saved to snapshot if all years parsed at startup. */
+        private final Collection<SessionsMonth> months = Collections.synchronizedList(new ArrayList<>());
+        private final SessionsSnapshot snapshot;
+        /** Store receiving sessions data, owned by the loading. */
+        private final SessionStore store;
+        private final SessionsYears years;
+        private final int generation;
+        private final Consumer<SessionsMonth> listener;
+        /** Next year index to parse. */
+        private int next;
+        /** <code>true</code> while older years are parsed. Only accessed from UI thread. */
+        private boolean loading;
+        /** <code>true</code> if sessions file changed since indexed, to be fully reloaded. */
+        private volatile boolean stale;
+
+        /**
+         * Create pending years.
+         *
+         * @param snapshot The snapshot to save once all years parsed.
+         * @param store The store receiving sessions data, owned by the loading.
+         * @param years The years index.
+         * @param generation The loading generation.
+         * @param listener The month listener.
+         */
+        PendingYears(SessionsSnapshot snapshot,
+                     SessionStore store,
+                     SessionsYears years,
+                     int generation,
+                     Consumer<SessionsMonth> listener)
+        {
+            super();
+
+            this.snapshot = snapshot;
+            this.store = store;
+            this.years = years;
+            this.generation = generation;
+            this.listener = listener.andThen(months::add);
+        }
+
+        /**
+         * Save snapshot of parsed years. Failure is not critical.
+         */
+        void save()
+        {
+            saveSnapshot(snapshot, store, months);
+        }
+
+        /**
+         * Parse year, marking pending years stale if sessions file changed. Can be called concurrently for different
+         * years.
+         *
+         * @param year The year index, most recent first.
+         */
+        void parse(int year)
+        {
+            try
+            {
+                if (!years.parse(year, store, listener))
+                {
+                    stale = true;
+                }
+            }
+            catch (IOException | XmlPullParserException e)
+            {
+                throw new IllegalArgumentException("XML error", e);
+            }
+        }
     }
 }
@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Byte offset index of the sessions file year elements ("_yyyy"), so years can be parsed separately.
+ * <p>
+ * Index is stored in app storage, keyed by the sessions file size and last modification time, and is rebuilt by
+ * scanning the sessions file bytes when outdated. Years are ordered most recent first. A year is parsed as a document
+ * made of the sessions file head (prolog and root start tag), the year element and the sessions file tail, keeping
+ * encoding and elements depth of the whole file.
+ * </p>
+ */
+final class SessionsYears
+{
+    private static final int MAGIC = 0x59454152;
+    private static final int VERSION = 1;
+    private static final String TEMP = ".tmp";
+    private static final byte TAG_START = '<';
+    private static final byte TAG_END = '>';
+    private static final byte TAG_CLOSE = '/';
+    private static final byte YEAR_PREFIX = '_';
+    private static final byte[] TAG_END_SEQUENCE = {TAG_END};
+
+    /**
+     * Find byte sequence.
+     *
+     * @param buffer The buffer to search.
+     * @param from The first byte index.
+     * @param sequence The sequence to find.
+     * @return The sequence index, <code>-1</code> if not found.
+     */
+    private static int find(ByteBuffer buffer, int from, byte[] sequence)
+    {
+        final int last = buffer.limit() - sequence.length;
+        for (int i = from; i <= last; i++)
+        {
+            int j = 0;
+            while (j < sequence.length && buffer.get(i + j) == sequence[j])
+            {
+                j++;
+            }
+            if (j == sequence.length)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read source range.
+     *
+     * @param channel The source channel.
+     * @param document The output document.
+     * @param offset The document offset.
+     * @param position The source position.
+     * @param length The bytes count.
+     * @throws IOException If read error.
+     */
+    private static void read(FileChannel channel, byte[] document, int offset, long position, int length)
+            throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(document, offset, length);
+        long current = position;
+        while (buffer.hasRemaining())
+        {
+            final int read = channel.read(buffer, current);
+            if (read < 0)
+            {
+                throw new IOException("Unexpected end of " + Constant.FILE_SESSIONS);
+            }
+            current += read;
+        }
+    }
+
+    /**
+     * Get element end tag.
+     *
+     * @param buffer The source buffer.
+     * @param start The element name start.
+     * @param end The element name end (excluded).
+     * @return The end tag bytes.
+     */
+    private static byte[] getEndTag(ByteBuffer buffer, int start, int end)
+    {
+        final byte[] tag = new byte[end - start + 3];
+        tag[0] = TAG_START;
+        tag[1] = TAG_CLOSE;
+        for (int i = start; i < end; i++)
+        {
+            tag[i - start + 2] = buffer.get(i);
+        }
+        tag[tag.length - 1] = TAG_END;
+        return tag;
+    }
+
+    private final File index;
+    private final File source;
+    /** Year values, most recent first. */
+    private int[] years = new int[0];
+    /** Year elements start offsets. */
+    private int[] starts = new int[0];
+    /** Year elements end offsets (excluded). */
+    private int[] ends = new int[0];
+    /** Head end offset (excluded), first year start. */
+    private int head;
+    /** Tail start offset, last year end. */
+    private int tail;
+    /** Indexed source size. */
+    private long sourceSize;
+    /** Indexed source last modification time. */
+    private long sourceModified;
+
+    /**
+     * Create index.
+     *
+     * @param index The index file.
+     * @param source The sessions source file.
+     */
+    SessionsYears(File index, File source)
+    {
+        super();
+
+        this.index = index;
+        this.source = source;
+    }
+
+    /**
+     * Load index if matching the current source, scan source and save index else. Failing to save is not critical.
+     *
+     * @throws IOException If unable to read source.
+     */
+    void open() throws IOException
+    {
+        final long size = source.length();
+        final long modified = source.lastModified();
+        sourceSize = size;
+        sourceModified = modified;
+        if (!load(size, modified))
+        {
+            scan();
+            try
+            {
+                save(size, modified);
+            }
+            catch (IOException e)
+            {
+                Util.log("Unable to save years index !", e);
+            }
+        }
+    }
+
+    /**
+     * Get the years count.
+     *
+     * @return The years count.
+     */
+    int size()
+    {
+        return years.length;
+    }
+
+    /**
+     * Get year value.
+     *
+     * @param n The year index, most recent first.
+     * @return The year value.
+     */
+    int getYear(int n)
+    {
+        return years[n];
+    }
+
+    /**
+     * Parse a year, notifying each month. Can be called concurrently for different years. Nothing is parsed if the
+     * source changed since indexed, offsets being outdated.
+     *
+     * @param n The year index, most recent first.
+     * @param store The store receiving sessions data.
+     * @param listener The month listener.
+     * @return <code>true</code> if parsed, <code>false</code> if source changed since indexed.
+     * @throws XmlPullParserException If invalid XML.
+     * @throws IOException If read error.
+     */
+    boolean parse(int n, SessionStore store, Consumer<SessionsMonth> listener)
+            throws XmlPullParserException, IOException
+    {
+        if (!isIndexed())
+        {
+            return false;
+        }
+        final int length = ends[n] - starts[n];
+        final byte[] document = new byte[head + length + (int) sourceSize - tail];
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+        {
+            read(channel, document, 0, 0, head);
+            read(channel, document, head, starts[n], length);
+            read(channel, document, head + length, tail, document.length - head - length);
+        }
+        if (!isIndexed())
+        {
+            return false;
+        }
+        final SessionsParser parser = new SessionsParser(store, listener);
+        parser.parse(new ByteArrayInputStream(document));
+        return true;
+    }
+
+    /**
+     * Check if source is still the indexed one.
+     *
+     * @return <code>true</code> if same size and last modification time, <code>false</code> else.
+     */
+    private boolean isIndexed()
+    {
+        return source.length() == sourceSize && source.lastModified() == sourceModified;
+    }
+
+    /**
+     * Load index if matching the source.
+     *
+     * @param size The source size.
+     * @param modified The source last modification time.
+     * @return <code>true</code> if loaded, <code>false</code> if missing, outdated or corrupted.
+     * @throws IOException If read error.
+     */
+    private boolean load(long size, long modified) throws IOException
+    {
+        if (!index.isFile())
+        {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ))
+        {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION
+                || buffer.getLong() != size
+                || buffer.getLong() != modified)
+            {
+                return false;
+            }
+            head = buffer.getInt();
+            tail = buffer.getInt();
+            final int count = buffer.getInt();
+            allocate(count);
+            for (int i = 0; i < count; i++)
+            {
+                years[i] = buffer.getInt();
+                starts[i] = buffer.getInt();
+                ends[i] = buffer.getInt();
+            }
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e)
+        {
+            Util.log("Corrupted years index !", e);
+            allocate(0);
+            return false;
+        }
+        return isValid(size);
+    }
+
+    /**
+     * Save index.
+     *
+     * @param size The source size.
+     * @param modified The source last modification time.
+     * @throws IOException If write error.
+     */
+    private void save(long size, long modified) throws IOException
+    {
+        final File temp = new File(index.getPath() + TEMP);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(size);
+            output.writeLong(modified);
+            output.writeInt(head);
+            output.writeInt(tail);
+            output.writeInt(years.length);
+            for (int i = 0; i < years.length; i++)
+            {
+                output.writeInt(years[i]);
+                output.writeInt(starts[i]);
+                output.writeInt(ends[i]);
+            }
+        }
+        if (!temp.renameTo(index))
+        {
+            throw new IOException("Unable to write years index: " + index);
+        }
+    }
+
+    /**
+     * Scan source for year elements, stored in file order then sorted most recent first.
+     *
+     * @throws IOException If read error.
+     */
+    private void scan() throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+        {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final int limit = buffer.limit();
+            int count = 0;
+            allocate(0);
+            head = limit;
+            tail = limit;
+            int i = 0;
+            while (i + 1 < limit)
+            {
+                if (buffer.get(i) != TAG_START || buffer.get(i + 1) != YEAR_PREFIX)
+                {
+                    i++;
+                    continue;
+                }
+                int j = i + 1;
+                int year = 0;
+                while (j < limit && buffer.get(j) > ' ' && buffer.get(j) != TAG_END && buffer.get(j) != TAG_CLOSE)
+                {
+                    final byte c = buffer.get(j);
+                    if (c >= '0' && c <= '9')
+                    {
+                        year = year * 10 + c - '0';
+                    }
+                    j++;
+                }
+                final byte[] endTag = getEndTag(buffer, i + 1, j);
+                final int close = find(buffer, j, TAG_END_SEQUENCE);
+                if (close < 0)
+                {
+                    break;
+                }
+                if (buffer.get(close - 1) == TAG_CLOSE)
+                {
+                    i = close + 1;
+                    continue;
+                }
+                final int end = find(buffer, close + 1, endTag);
+                if (end < 0)
+                {
+                    throw new IOException("Unclosed year element: " + year);
+                }
+                if (count == years.length)
+                {
+                    grow(Math.max(8, count * 2));
+                }
+                years[count] = year;
+                starts[count] = i;
+                ends[count] = end + endTag.length;
+                head = Math.min(head, i);
+                tail = ends[count];
+                count++;
+                i = ends[count - 1];
+            }
+            grow(count);
+        }
+        sort();
+    }
+
+    /**
+     * Sort years most recent first (few elements).
+     */
+    private void sort()
+    {
+        for (int i = 1; i < years.length; i++)
+        {
+            final int year = years[i];
+            final int start = starts[i];
+            final int end = ends[i];
+            int j = i - 1;
+            while (j >= 0 && years[j] < year)
+            {
+                years[j + 1] = years[j];
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+                j--;
+            }
+            years[j + 1] = year;
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+        }
+    }
+
+    /**
+     * Check loaded offsets are ordered and inside source, reset index else.
+     *
+     * @param size The source size.
+     * @return <code>true</code> if valid, <code>false</code> if corrupted.
+     */
+    private boolean isValid(long size)
+    {
+        boolean valid = head >= 0 && head <= tail && tail <= size;
+        for (int i = 0; valid && i < years.length; i++)
+        {
+            valid = starts[i] >= head && starts[i] <= ends[i] && ends[i] <= tail;
+        }
+        if (!valid)
+        {
+            allocate(0);
+        }
+        return valid;
+    }
+
+    private void allocate(int count)
+    {
+        years = new int[count];
+        starts = new int[count];
+        ends = new int[count];
+    }
+
+    private void grow(int count)
+    {
+        years = Arrays.copyOf(years, count);
+        starts = Arrays.copyOf(starts, count);
+        ends = Arrays.copyOf(ends, count);
+    }
+}
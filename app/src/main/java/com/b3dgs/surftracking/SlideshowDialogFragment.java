@@ -19,8 +19,6 @@ package com.b3dgs.surftracking;
 import android.app.DialogFragment;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -33,22 +31,38 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
-import com.bumptech.glide.load.resource.bitmap.BitmapTransformation;
-import com.bumptech.glide.request.RequestOptions;
 
-import java.security.MessageDigest;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Locale;
 
 /**
- * Represents the fullscreen gallery view.
+ * Represents the fullscreen gallery view. Media collaborators are provided by the hosting activity, and the view is
+ * closed if the displayed media is no more part of the session after a manifest rebuild.
  */
 public final class SlideshowDialogFragment extends DialogFragment
 {
-    private ArrayList<String> images;
+    /** Pages preloaded in swipe direction. */
+    private static final int PRELOAD_COUNT = 2;
+    /** Preloading memory budget. */
+    private static final long PRELOAD_BUDGET = 48L * 1024L * 1024L;
+
+    private final Runnable manifestListener = () ->
+    {
+        final View view = getView();
+        if (view != null)
+        {
+            view.post(this::checkMedia);
+        }
+    };
+    private List<MediaManifest.Media> media = Collections.emptyList();
+    private MediaManifest manifest;
+    private ThumbnailCache cache;
     private ViewPager viewPager;
     private TextView lblCount;
+    private SlideshowPreloader preloader;
     private int selectedPosition;
 
     static SlideshowDialogFragment newInstance()
@@ -58,6 +72,27 @@ public final class SlideshowDialogFragment extends DialogFragment
         return fragment;
     }
 
+    @Override
+    public void onAttach(Context context)
+    {
+        super.onAttach(context);
+
+        final MediaProvider provider = (MediaProvider) context;
+        manifest = provider.getManifest();
+        cache = provider.getCache();
+        manifest.addListener(manifestListener);
+    }
+
+    @Override
+    public void onDetach()
+    {
+        manifest.removeListener(manifestListener);
+        manifest = null;
+        cache = null;
+
+        super.onDetach();
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState)
     {
@@ -65,18 +100,62 @@ public final class SlideshowDialogFragment extends DialogFragment
         viewPager = view.findViewById(R.id.viewpager);
         lblCount = view.findViewById(R.id.lbl_count);
 
-        images = (ArrayList<String>) getArguments().getSerializable(GalleryView.ARG_IMAGES);
+        media = manifest.getMedia(getArguments().getInt(GalleryView.ARG_SESSION));
         selectedPosition = getArguments().getInt(GalleryView.ARG_POSITION);
+        if (selectedPosition >= media.size())
+        {
+            media = Collections.emptyList();
+            selectedPosition = 0;
+            view.post(this::dismissAllowingStateLoss);
+        }
 
-        final MyViewPagerAdapter myViewPagerAdapter = new MyViewPagerAdapter();
+        preloader = new SlideshowPreloader(Glide.with(getActivity()),
+                                           this::getModel,
+                                           media.size(),
+                                           PRELOAD_COUNT,
+                                           PRELOAD_BUDGET);
+        final MyViewPagerAdapter myViewPagerAdapter = new MyViewPagerAdapter(inflater);
         viewPager.setAdapter(myViewPagerAdapter);
         viewPager.addOnPageChangeListener(viewPagerPageChangeListener);
 
         setCurrentItem(selectedPosition);
+        if (!media.isEmpty())
+        {
+            viewPager.post(() -> preload(selectedPosition));
+        }
 
         return view;
     }
 
+    @Override
+    public void onDestroyView()
+    {
+        preloader.cancel();
+        super.onDestroyView();
+    }
+
+    /**
+     * Close view if displayed media is no more the session media at this position. Must be called from UI thread.
+     */
+    private void checkMedia()
+    {
+        if (manifest == null || media.isEmpty())
+        {
+            return;
+        }
+        final int position = viewPager.getCurrentItem();
+        final List<MediaManifest.Media> current = manifest.getMedia(getArguments().getInt(GalleryView.ARG_SESSION));
+        if (position >= current.size() || current.get(position).id != media.get(position).id)
+        {
+            dismissAllowingStateLoss();
+        }
+    }
+
+    private void preload(int position)
+    {
+        preloader.onPageSelected(position, viewPager.getWidth(), viewPager.getHeight());
+    }
+
     private void setCurrentItem(int position)
     {
         viewPager.setCurrentItem(position, false);
@@ -90,6 +169,7 @@ public final class SlideshowDialogFragment extends DialogFragment
         public void onPageSelected(int position)
         {
             displayMetaInfo(position);
+            preload(position);
         }
 
         @Override
@@ -103,9 +183,69 @@ public final class SlideshowDialogFragment extends DialogFragment
         }
     };
 
+    /**
+     * Get page image model, screen size thumbnail if available, else original image.
+     *
+     * @param position The page position.
+     * @return The image to load, <code>null</code> if nothing to load (video without poster yet).
+     */
+    private String getModel(int position)
+    {
+        final MediaManifest.Media entry = media.get(position);
+        final String thumbnail = cache.get(entry, ThumbnailCache.SCREEN);
+        if (thumbnail != null || entry.isVideo())
+        {
+            return thumbnail;
+        }
+        return entry.path;
+    }
+
+    /**
+     * Open media, playing video or showing zoomable image.
+     *
+     * @param page The page reference.
+     * @param entry The page media.
+     */
+    private void open(Page page, MediaManifest.Media entry)
+    {
+        if (entry.isVideo())
+        {
+            final Intent intent = new Intent(Intent.ACTION_VIEW);
+            intent.setDataAndType(Uri.parse(entry.path), "video/" + GalleryView.EXTENSION_VIDEO.substring(1));
+            startActivity(intent);
+        }
+        else
+        {
+            showZoom(page.zoom, entry.path);
+        }
+    }
+
+    /**
+     * Show zoomable full resolution image.
+     *
+     * @param zoom The zoom view.
+     * @param file The image file.
+     */
+    private static void showZoom(TiledImageView zoom, String file)
+    {
+        zoom.setVisibility(View.VISIBLE);
+        zoom.setImage(file);
+    }
+
+    /**
+     * Hide zoomable image and release its tiles.
+     *
+     * @param zoom The zoom view.
+     */
+    private static void hideZoom(TiledImageView zoom)
+    {
+        zoom.recycle();
+        zoom.setVisibility(View.GONE);
+    }
+
     private void displayMetaInfo(int position)
     {
-        lblCount.setText(String.format(Locale.ENGLISH, "%d / %d", position + 1, images.size()));
+        lblCount.setText(String.format(Locale.ENGLISH, "%d / %d", position + 1, media.size()));
     }
 
     @Override
@@ -115,99 +255,92 @@ public final class SlideshowDialogFragment extends DialogFragment
         super.onCreate(savedInstanceState);
     }
 
+    /**
+     * Slideshow page views, recycled between pages.
+     */
+    private static final class Page
+    {
+        private final View view;
+        private final ImageView image;
+        private final TiledImageView zoom;
+        private final ImageView play;
+
+        /**
+         * Create page.
+         *
+         * @param view The page view.
+         */
+        Page(View view)
+        {
+            super();
+
+            this.view = view;
+            image = view.findViewById(R.id.image_preview);
+            zoom = view.findViewById(R.id.image_zoom);
+            play = view.findViewById(R.id.full_play);
+            zoom.setExitListener(() -> hideZoom(zoom));
+        }
+    }
+
     private final class MyViewPagerAdapter extends PagerAdapter
     {
-        private LayoutInflater layoutInflater;
+        /** Released pages, ready to be bound again. */
+        private final Deque<Page> pool = new ArrayDeque<>();
+        private final LayoutInflater layoutInflater;
 
-        MyViewPagerAdapter()
+        MyViewPagerAdapter(LayoutInflater layoutInflater)
         {
             super();
+
+            this.layoutInflater = layoutInflater;
         }
 
         @NonNull
         @Override
         public Object instantiateItem(@NonNull ViewGroup container, final int position)
         {
-            layoutInflater = (LayoutInflater) getActivity().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            final View view = layoutInflater.inflate(R.layout.image_fullscreen_preview, container, false);
-            final String file = images.get(position);
-            final ImageView imageViewPreview = view.findViewById(R.id.image_preview);
-            imageViewPreview.setOnClickListener(v ->
-                                                {
-                                                    if (file.toLowerCase(Locale.ENGLISH)
-                                                            .endsWith(GalleryView.EXTENSION_VIDEO))
-                                                    {
-                                                        final Intent intent = new Intent(Intent.ACTION_VIEW);
-                                                        intent.setDataAndType(Uri.parse(file),
-                                                                              "video/" +
-                                                                              GalleryView.EXTENSION_VIDEO.substring(1));
-                                                        startActivity(intent);
-                                                    }
-                                                });
-
-            Glide.with(getActivity())
-                 .load(file)
-                 .apply(RequestOptions.bitmapTransform(new RotateTransformation(90f)))
-                 .into(imageViewPreview);
-
-            final ImageView play = view.findViewById(R.id.full_play);
-            if (file.toLowerCase(Locale.ENGLISH).endsWith(".mp4"))
+            Page page = pool.poll();
+            if (page == null)
             {
-                play.setVisibility(View.VISIBLE);
+                page = new Page(layoutInflater.inflate(R.layout.image_fullscreen_preview, container, false));
             }
-            else
+            final Page bound = page;
+            final MediaManifest.Media entry = media.get(position);
+            page.image.setOnClickListener(v -> open(bound, entry));
+
+            final String model = getModel(position);
+            if (model != null)
             {
-                play.setVisibility(View.INVISIBLE);
+                Glide.with(getActivity()).load(model).apply(SurfGlideModule.SCREEN).into(page.image);
             }
+            page.play.setVisibility(entry.isVideo() ? View.VISIBLE : View.INVISIBLE);
 
-            container.addView(view);
+            container.addView(page.view);
 
-            return view;
+            return page;
         }
 
         @Override
         public int getCount()
         {
-            return images.size();
+            return media.size();
         }
 
         @Override
         public boolean isViewFromObject(@NonNull View view, @NonNull Object obj)
         {
-            return view == obj;
+            return view == ((Page) obj).view;
         }
 
         @Override
         public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object)
         {
-            container.removeView((View) object);
-        }
-    }
-
-    private static final class RotateTransformation extends BitmapTransformation
-    {
-        private float rotateRotationAngle;
-
-        RotateTransformation(float rotateRotationAngle)
-        {
-            super();
-
-            this.rotateRotationAngle = rotateRotationAngle;
-        }
-
-        @Override
-        protected Bitmap transform(@NonNull BitmapPool pool, @NonNull Bitmap dest, int outWidth, int outHeight)
-        {
-            final Matrix matrix = new Matrix();
-            matrix.postRotate(rotateRotationAngle);
-
-            return Bitmap.createBitmap(dest, 0, 0, dest.getWidth(), dest.getHeight(), matrix, true);
-        }
-
-        @Override
-        public void updateDiskCacheKey(@NonNull MessageDigest messageDigest)
-        {
-            messageDigest.update(("rotate" + rotateRotationAngle).getBytes());
+            final Page page = (Page) object;
+            hideZoom(page.zoom);
+            Glide.with(getActivity()).clear(page.image); // Release bitmap to pool
+            page.image.setOnClickListener(null);
+            container.removeView(page.view);
+            pool.push(page);
         }
     }
 }
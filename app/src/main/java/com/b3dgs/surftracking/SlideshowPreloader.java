@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.function.IntFunction;
+
+/**
+ * Preload slideshow pages around the current one into Glide memory cache, at page size.
+ * <p>
+ * Pages are preloaded in the swipe direction, further and without looking back when swiping fast, within a memory
+ * budget. Preloads going out of range are cancelled.
+ * </p>
+ */
+final class SlideshowPreloader
+{
+    /** Delay between two page selections under which swipe is considered as fast. */
+    private static final long FAST_SWIPE_MS = 500L;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final SparseArray<Target<?>> targets = new SparseArray<>();
+    private final RequestManager glide;
+    private final IntFunction<String> models;
+    private final int pages;
+    private final int count;
+    private final long budget;
+    private int last = -1;
+    private long lastTime;
+
+    /**
+     * Create preloader.
+     *
+     * @param glide The request manager.
+     * @param models The page model provider (<code>null</code> if nothing to load).
+     * @param pages The number of pages.
+     * @param count The number of pages to preload in swipe direction.
+     * @param budget The memory budget in bytes.
+     */
+    SlideshowPreloader(RequestManager glide, IntFunction<String> models, int pages, int count, long budget)
+    {
+        super();
+
+        this.glide = glide;
+        this.models = models;
+        this.pages = pages;
+        this.count = count;
+        this.budget = budget;
+    }
+
+    /**
+     * Update preloads around selected page.
+     *
+     * @param position The selected page.
+     * @param width The page width.
+     * @param height The page height.
+     */
+    void onPageSelected(int position, int width, int height)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        final boolean fast = last >= 0 && now - lastTime < FAST_SWIPE_MS;
+        final int direction = position < last ? -1 : 1;
+        last = position;
+        lastTime = now;
+
+        final long capacity = budget / ((long) width * height * BYTES_PER_PIXEL);
+        final int behind = fast ? 0 : (int) Math.min(1L, capacity);
+        final int ahead = (int) Math.min(fast ? count * 2L : count, capacity - behind);
+
+        final int first = Math.max(0, direction > 0 ? position - behind : position - ahead);
+        final int end = Math.min(pages - 1, direction > 0 ? position + ahead : position + behind);
+        for (int i = targets.size() - 1; i >= 0; i--)
+        {
+            final int page = targets.keyAt(i);
+            if (page < first || page > end || page == position)
+            {
+                glide.clear(targets.valueAt(i));
+                targets.removeAt(i);
+            }
+        }
+        for (int step = 1; step <= ahead; step++)
+        {
+            preload(position + direction * step, width, height);
+        }
+        for (int step = 1; step <= behind; step++)
+        {
+            preload(position - direction * step, width, height);
+        }
+    }
+
+    /**
+     * Cancel all preloads.
+     */
+    void cancel()
+    {
+        for (int i = 0; i < targets.size(); i++)
+        {
+            glide.clear(targets.valueAt(i));
+        }
+        targets.clear();
+        last = -1;
+    }
+
+    private void preload(int page, int width, int height)
+    {
+        if (page < 0 || page >= pages || targets.get(page) != null)
+        {
+            return;
+        }
+        final String model = models.apply(page);
+        if (model != null)
+        {
+            targets.put(page, glide.load(model).apply(SurfGlideModule.SCREEN).preload(width, height));
+        }
+    }
+}
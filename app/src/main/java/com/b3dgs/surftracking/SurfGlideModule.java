@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Glide configuration, with cache sizes depending on device class, and request profiles per usage.
+ */
+@GlideModule
+public final class SurfGlideModule extends AppGlideModule
+{
+    /** Calendar and gallery thumbnails, already small and stored by {@link ThumbnailCache}. */
+    static final RequestOptions THUMBNAIL = new RequestOptions().format(DecodeFormat.PREFER_RGB_565)
+                                                                .downsample(DownsampleStrategy.AT_MOST)
+                                                                .diskCacheStrategy(DiskCacheStrategy.NONE);
+    /** Detail icons, from app resources. */
+    static final RequestOptions ICON = new RequestOptions().diskCacheStrategy(DiskCacheStrategy.NONE);
+    /**
+     * Fit inside requested size, long edge to long edge, so images fit the screen in both device orientations. Never
+     * upscale.
+     */
+    static final DownsampleStrategy FIT_LONG_EDGE = new DownsampleStrategy()
+    {
+        @Override
+        public float getScaleFactor(int sourceWidth, int sourceHeight, int requestedWidth, int requestedHeight)
+        {
+            final float longScale = Math.max(requestedWidth, requestedHeight)
+                                    / (float) Math.max(sourceWidth, sourceHeight);
+            final float shortScale = Math.min(requestedWidth, requestedHeight)
+                                     / (float) Math.min(sourceWidth, sourceHeight);
+            return Math.min(1.0f, Math.min(longScale, shortScale));
+        }
+
+        @Override
+        public SampleSizeRounding getSampleSizeRounding(int sourceWidth,
+                                                        int sourceHeight,
+                                                        int requestedWidth,
+                                                        int requestedHeight)
+        {
+            return SampleSizeRounding.MEMORY;
+        }
+    };
+    /**
+     * Slideshow images, decoded at screen size from originals with their EXIF orientation. Not transformed and
+     * without hardware bitmaps, so decoding reuses pooled bitmaps.
+     */
+    static final RequestOptions SCREEN = new RequestOptions().format(DecodeFormat.PREFER_ARGB_8888)
+                                                             .downsample(FIT_LONG_EDGE)
+                                                             .dontTransform()
+                                                             .disallowHardwareConfig()
+                                                             .diskCacheStrategy(DiskCacheStrategy.RESOURCE);
+
+    private static final String DISK_CACHE_FOLDER = "glide";
+    private static final long DISK_CACHE_SIZE = 256L * 1024L * 1024L;
+    private static final long DISK_CACHE_SIZE_LOW = 64L * 1024L * 1024L;
+    /** Memory class (in MB) up to which device is considered as low memory. */
+    private static final int LOW_MEMORY_CLASS = 128;
+    private static final float SCREENS_LOW = 1.0f;
+    private static final float MEMORY_CACHE_SCREENS = 3.0f;
+    private static final float BITMAP_POOL_SCREENS = 4.0f;
+    private static final int MB = 1024 * 1024;
+
+    private static volatile StatsMemoryCache memoryCache;
+    private static volatile LruBitmapPool bitmapPool;
+    private static volatile long diskCacheSize;
+
+    /**
+     * Get cache statistics, for tuning.
+     *
+     * @return The cache statistics, empty if Glide not initialized.
+     */
+    static String getStats()
+    {
+        final StatsMemoryCache cache = memoryCache;
+        final LruBitmapPool pool = bitmapPool;
+        if (cache == null || pool == null)
+        {
+            return "";
+        }
+        return String.format(Locale.ENGLISH,
+                             "Memory cache: %d/%dMB, hits=%d, misses=%d, evictions=%d | Bitmap pool: %dMB | Disk: %dMB",
+                             Long.valueOf(cache.getCurrentSize() / MB),
+                             Long.valueOf(cache.getMaxSize() / MB),
+                             Long.valueOf(cache.hits.get()),
+                             Long.valueOf(cache.misses.get()),
+                             Long.valueOf(cache.evictions.get()),
+                             Long.valueOf(pool.getMaxSize() / MB),
+                             Long.valueOf(diskCacheSize / MB));
+    }
+
+    /**
+     * Create module (called by generated Glide module).
+     */
+    public SurfGlideModule()
+    {
+        super();
+    }
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder)
+    {
+        final ActivityManager activityManager = context.getSystemService(ActivityManager.class);
+        final boolean low = activityManager.isLowRamDevice() || activityManager.getMemoryClass() <= LOW_MEMORY_CLASS;
+
+        final MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(low ? SCREENS_LOW : MEMORY_CACHE_SCREENS)
+                .setBitmapPoolScreens(low ? SCREENS_LOW : BITMAP_POOL_SCREENS)
+                .build();
+        memoryCache = new StatsMemoryCache(calculator.getMemoryCacheSize());
+        bitmapPool = new LruBitmapPool(calculator.getBitmapPoolSize());
+        diskCacheSize = low ? DISK_CACHE_SIZE_LOW : DISK_CACHE_SIZE;
+
+        builder.setMemorySizeCalculator(calculator)
+               .setMemoryCache(memoryCache)
+               .setBitmapPool(bitmapPool)
+               .setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_FOLDER, diskCacheSize));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Memory cache counting hits, misses and evictions.
+     */
+    private static final class StatsMemoryCache extends LruResourceCache
+    {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        /**
+         * Create cache.
+         *
+         * @param size The maximum size in bytes.
+         */
+        StatsMemoryCache(long size)
+        {
+            super(size);
+        }
+
+        @Override
+        public Resource<?> remove(@NonNull Key key)
+        {
+            final Resource<?> resource = super.remove(key);
+            if (resource != null)
+            {
+                hits.incrementAndGet();
+            }
+            else
+            {
+                misses.incrementAndGet();
+            }
+            return resource;
+        }
+
+        @Override
+        protected void onItemEvicted(@NonNull Key key, Resource<?> item)
+        {
+            evictions.incrementAndGet();
+            super.onItemEvicted(key, item);
+        }
+    }
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.MediaMetadataRetriever;
+import android.util.DisplayMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Media thumbnails cache in app storage, with a tier per display size (calendar cell, gallery cell, screen).
+ * <p>
+ * Thumbnails are generated from background, from the embedded EXIF thumbnail when large enough, else from a sampled
+ * decode of the original. Videos get a poster frame extracted once at screen tier, other tiers being sampled from it,
+ * and their duration is persisted along. Thumbnails are already rotated, and invalidated when the original
+ * modification time changes. Last requested thumbnails are generated first.
+ * </p>
+ */
+final class ThumbnailCache
+{
+    /** Calendar cell tier. */
+    static final int SMALL = 0;
+    /** Gallery cell tier. */
+    static final int MEDIUM = 1;
+    /** Screen size tier. */
+    static final int SCREEN = 2;
+
+    private static final int CALENDAR_COLUMNS = 4;
+    private static final int GALLERY_COLUMNS = 3;
+    private static final int QUALITY = 85;
+    /** Embedded thumbnail is used if at least this ratio of the tier size. */
+    private static final float EMBEDDED_RATIO = 0.5f;
+    private static final String EXTENSION = ".jpg";
+    private static final String EXTENSION_TEMP = ".tmp";
+    private static final String FILE_DURATIONS = "durations.index";
+    /** Poster frame position, as a fraction of the video duration (skip fade in). */
+    private static final long POSTER_POSITION = 3L;
+    /** Generated thumbnails between two notifications while generation is pending. */
+    private static final int NOTIFY_COUNT = 8;
+
+    /**
+     * Get cache file name of a media.
+     *
+     * @param media The media.
+     * @return The cache file name.
+     */
+    private static String getName(MediaManifest.Media media)
+    {
+        return Long.toHexString(media.id) + EXTENSION;
+    }
+
+    /**
+     * Get largest power of two sample keeping the edge at least the expected size.
+     *
+     * @param edge The image edge.
+     * @param size The expected size.
+     * @return The sample size.
+     */
+    private static int getSample(int edge, int size)
+    {
+        int sample = 1;
+        while (edge / (sample * 2) >= size)
+        {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * Write thumbnail, replacing previous one atomically.
+     *
+     * @param bitmap The thumbnail bitmap.
+     * @param target The cache file.
+     * @throws IOException If unable to write.
+     */
+    private static void write(Bitmap bitmap, File target) throws IOException
+    {
+        final File temp = new File(target.getPath() + EXTENSION_TEMP);
+        try (OutputStream output = new FileOutputStream(temp))
+        {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, QUALITY, output))
+            {
+                throw new IOException("Unable to compress " + target);
+            }
+        }
+        if (!temp.renameTo(target))
+        {
+            throw new IOException("Unable to rename " + temp);
+        }
+    }
+
+    private final Collection<Runnable> listeners = new CopyOnWriteArrayList<>();
+    /** Video durations by path. */
+    private final Map<String, Entry> durations = new ConcurrentHashMap<>();
+    private final ExifReader exif = new ExifReader();
+    private final Tier[] tiers;
+    private final File durationsFile;
+    private final ThreadPoolExecutor executor;
+    /** Generated thumbnails count. Only accessed by generator. */
+    private int generated;
+
+    /**
+     * Create cache.
+     *
+     * @param folder The cache folder in app storage.
+     * @param metrics The display metrics.
+     */
+    ThumbnailCache(File folder, DisplayMetrics metrics)
+    {
+        super();
+
+        durationsFile = new File(folder, FILE_DURATIONS);
+        final int shortEdge = Math.min(metrics.widthPixels, metrics.heightPixels);
+        final int longEdge = Math.max(metrics.widthPixels, metrics.heightPixels);
+        tiers = new Tier[]
+        {
+            new Tier(new File(folder, "small"), shortEdge / CALENDAR_COLUMNS, true),
+            new Tier(new File(folder, "medium"), shortEdge / GALLERY_COLUMNS, true),
+            new Tier(new File(folder, "screen"), longEdge, false)
+        };
+
+        final BlockingQueue<Runnable> queue = new LinkedBlockingDeque<Runnable>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean offer(Runnable runnable)
+            {
+                return offerFirst(runnable);
+            }
+        };
+        executor = new ThreadPoolExecutor(1,
+                                          1,
+                                          0L,
+                                          TimeUnit.MILLISECONDS,
+                                          queue,
+                                          new ThreadPoolExecutor.DiscardPolicy());
+        executor.execute(this::loadDurations);
+    }
+
+    /**
+     * Add a cache update listener, called from background when thumbnails have been generated.
+     *
+     * @param listener The listener to add.
+     */
+    void addListener(Runnable listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Check if media thumbnail is available. Does not access storage, nor request its generation.
+     *
+     * @param media The media.
+     * @param tier The thumbnail tier.
+     * @return <code>true</code> if available, <code>false</code> else.
+     */
+    boolean isCached(MediaManifest.Media media, int tier)
+    {
+        final Entry entry = tiers[tier].entries.get(media.path);
+        return entry != null && entry.modified == media.modified;
+    }
+
+    /**
+     * Get media thumbnail. Does not access storage, and requests its generation if not available.
+     *
+     * @param media The media.
+     * @param tier The thumbnail tier.
+     * @return The thumbnail path, <code>null</code> if not yet available, not possible or disposed.
+     */
+    String get(MediaManifest.Media media, int tier)
+    {
+        final Tier current = tiers[tier];
+        final Entry entry = current.entries.get(media.path);
+        if (entry != null && entry.modified == media.modified)
+        {
+            return entry.file;
+        }
+        if (!executor.isShutdown() && current.pending.add(media.path))
+        {
+            executor.execute(() -> generate(current, media));
+        }
+        return null;
+    }
+
+    /**
+     * Get video duration. Does not access storage, known once its poster frame has been extracted.
+     *
+     * @param media The video.
+     * @return The duration in milliseconds, <code>-1</code> if unknown.
+     */
+    long getDuration(MediaManifest.Media media)
+    {
+        final Entry entry = durations.get(media.path);
+        if (entry != null && entry.modified == media.modified)
+        {
+            return entry.duration;
+        }
+        return -1L;
+    }
+
+    /**
+     * Stop pending generations. Generations requested afterwards are ignored.
+     */
+    void dispose()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Generate thumbnail if not in cache, and notify listeners. Any failure, including out of memory, marks the
+     * thumbnail as not possible without stopping the generator thread.
+     *
+     * @param tier The thumbnail tier.
+     * @param media The media.
+     */
+    private void generate(Tier tier, MediaManifest.Media media)
+    {
+        try
+        {
+            final String file = ensure(tier, media);
+            tier.entries.put(media.path, new Entry(media.modified, file));
+            if (file == null)
+            {
+                return;
+            }
+            generated++;
+            if (generated % NOTIFY_COUNT == 0 || executor.getQueue().isEmpty())
+            {
+                listeners.forEach(Runnable::run);
+            }
+        }
+        catch (IOException | RuntimeException | OutOfMemoryError e)
+        {
+            Util.log("Unable to generate thumbnail of " + media.path, e);
+            tier.entries.put(media.path, new Entry(media.modified, null));
+        }
+        finally
+        {
+            tier.pending.remove(media.path);
+        }
+    }
+
+    /**
+     * Ensure thumbnail exists in cache, generating it if missing or outdated.
+     *
+     * @param tier The thumbnail tier.
+     * @param media The media.
+     * @return The thumbnail path, <code>null</code> if unable to decode.
+     * @throws IOException If unable to read media or write thumbnail.
+     */
+    private String ensure(Tier tier, MediaManifest.Media media) throws IOException
+    {
+        final File target = new File(tier.folder, getName(media));
+        if (target.lastModified() != media.modified)
+        {
+            final Bitmap bitmap;
+            if (!media.isVideo())
+            {
+                bitmap = decode(media.path, tier);
+            }
+            else if (tier == tiers[SCREEN])
+            {
+                bitmap = extractPoster(media, tier);
+            }
+            else
+            {
+                final String poster = ensure(tiers[SCREEN], media);
+                bitmap = poster != null ? decode(poster, tier) : null;
+            }
+            if (bitmap == null)
+            {
+                return null;
+            }
+            if (!tier.folder.isDirectory() && !tier.folder.mkdirs())
+            {
+                throw new IOException("Unable to create " + tier.folder);
+            }
+            write(bitmap, target);
+            bitmap.recycle();
+            if (!target.setLastModified(media.modified))
+            {
+                Util.log("Unable to set thumbnail time: " + target);
+            }
+        }
+        return target.getPath();
+    }
+
+    /**
+     * Extract video poster frame and store its duration.
+     *
+     * @param media The video.
+     * @param tier The thumbnail tier.
+     * @return The scaled poster frame, <code>null</code> if unable to extract.
+     */
+    private Bitmap extractPoster(MediaManifest.Media media, Tier tier)
+    {
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try
+        {
+            retriever.setDataSource(media.path);
+            final String value = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            final long duration = value != null ? Long.parseLong(value) : 0L;
+            final Bitmap frame = retriever.getFrameAtTime(duration * 1_000L / POSTER_POSITION,
+                                                          MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (frame == null)
+            {
+                return null;
+            }
+            saveDuration(media, duration);
+            return transform(frame, tier, 0);
+        }
+        catch (RuntimeException e)
+        {
+            Util.log("Unable to extract poster of " + media.path, e);
+            return null;
+        }
+        finally
+        {
+            retriever.release();
+        }
+    }
+
+    /**
+     * Store video duration, and append it to persisted durations. Failure is not critical.
+     *
+     * @param media The video.
+     * @param duration The duration in milliseconds.
+     */
+    private void saveDuration(MediaManifest.Media media, long duration)
+    {
+        durations.put(media.path, new Entry(media.modified, null, duration));
+        try (OutputStream stream = new FileOutputStream(durationsFile, true);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream)))
+        {
+            output.writeUTF(media.path);
+            output.writeLong(media.modified);
+            output.writeLong(duration);
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to save video duration !", e);
+        }
+    }
+
+    /**
+     * Load persisted video durations from generator, as its first task, last record of a path being the current one.
+     * Durations extracted meanwhile are kept. Persisted durations are compacted if containing outdated or truncated
+     * records. Durations are unknown until loaded.
+     */
+    private void loadDurations()
+    {
+        if (durationsFile.isFile())
+        {
+            final Map<String, Entry> loaded = new HashMap<>();
+            int records = 0;
+            try (InputStream stream = new FileInputStream(durationsFile);
+                 DataInputStream input = new DataInputStream(new BufferedInputStream(stream)))
+            {
+                while (input.available() > 0)
+                {
+                    final String path = input.readUTF();
+                    final long modified = input.readLong();
+                    loaded.put(path, new Entry(modified, null, input.readLong()));
+                    records++;
+                }
+            }
+            catch (IOException e)
+            {
+                Util.log("Unable to load video durations !", e);
+                records = -1;
+            }
+            loaded.forEach(durations::putIfAbsent);
+            if (records != loaded.size())
+            {
+                compactDurations();
+            }
+            listeners.forEach(Runnable::run);
+        }
+        else if (!durationsFile.getParentFile().isDirectory() && !durationsFile.getParentFile().mkdirs())
+        {
+            Util.log("Unable to create " + durationsFile.getParent());
+        }
+    }
+
+    /**
+     * Rewrite persisted video durations with current records only, replacing previous ones atomically. Failure is not
+     * critical.
+     */
+    private void compactDurations()
+    {
+        final File temp = new File(durationsFile.getPath() + EXTENSION_TEMP);
+        try
+        {
+            try (OutputStream stream = new FileOutputStream(temp);
+                 DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream)))
+            {
+                for (final Map.Entry<String, Entry> duration : durations.entrySet())
+                {
+                    output.writeUTF(duration.getKey());
+                    output.writeLong(duration.getValue().modified);
+                    output.writeLong(duration.getValue().duration);
+                }
+            }
+            if (!temp.renameTo(durationsFile))
+            {
+                throw new IOException("Unable to rename " + temp);
+            }
+        }
+        catch (IOException e)
+        {
+            Util.log("Unable to compact video durations !", e);
+        }
+    }
+
+    /**
+     * Decode thumbnail, from embedded EXIF thumbnail if large enough, else from sampled original.
+     *
+     * @param path The image path.
+     * @param tier The thumbnail tier.
+     * @return The rotated and scaled thumbnail, <code>null</code> if unable to decode.
+     * @throws IOException If unable to read image.
+     */
+    private Bitmap decode(String path, Tier tier) throws IOException
+    {
+        Bitmap bitmap = null;
+        int orientation = ExifReader.ORIENTATION_NORMAL;
+        if (exif.read(path))
+        {
+            orientation = exif.getOrientation();
+            if (exif.getThumbnailLength() > 0)
+            {
+                bitmap = decodeEmbedded(path, exif.getThumbnailOffset(), exif.getThumbnailLength(), tier);
+            }
+        }
+        if (bitmap == null)
+        {
+            bitmap = decodeOriginal(path, tier);
+        }
+        if (bitmap == null)
+        {
+            return null;
+        }
+        return transform(bitmap, tier, ExifReader.getRotation(orientation));
+    }
+
+    /**
+     * Decode embedded EXIF thumbnail.
+     *
+     * @param path The image path.
+     * @param offset The thumbnail offset in file.
+     * @param length The thumbnail length.
+     * @param tier The thumbnail tier.
+     * @return The thumbnail, <code>null</code> if too small or invalid.
+     * @throws IOException If unable to read image.
+     */
+    private static Bitmap decodeEmbedded(String path, long offset, int length, Tier tier) throws IOException
+    {
+        final byte[] data = new byte[length];
+        try (RandomAccessFile file = new RandomAccessFile(path, "r"))
+        {
+            file.seek(offset);
+            file.readFully(data);
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        final int edge = tier.getEdge(options.outWidth, options.outHeight);
+        if (edge < tier.size * EMBEDDED_RATIO)
+        {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSample(edge, tier.size);
+        return BitmapFactory.decodeByteArray(data, 0, length, options);
+    }
+
+    /**
+     * Decode sampled original image.
+     *
+     * @param path The image path.
+     * @param tier The thumbnail tier.
+     * @return The image, <code>null</code> if invalid.
+     */
+    private static Bitmap decodeOriginal(String path, Tier tier)
+    {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+        {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSample(tier.getEdge(options.outWidth, options.outHeight), tier.size);
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * Scale down to tier size and rotate.
+     *
+     * @param bitmap The decoded bitmap.
+     * @param tier The thumbnail tier.
+     * @param rotation The rotation in degrees.
+     * @return The transformed bitmap.
+     */
+    private static Bitmap transform(Bitmap bitmap, Tier tier, int rotation)
+    {
+        final float scale = tier.size / (float) tier.getEdge(bitmap.getWidth(), bitmap.getHeight());
+        if (scale >= 1.0f && rotation == 0)
+        {
+            return bitmap;
+        }
+        final Matrix matrix = new Matrix();
+        if (scale < 1.0f)
+        {
+            matrix.postScale(scale, scale);
+        }
+        matrix.postRotate(rotation);
+        final Bitmap transformed = Bitmap.createBitmap(bitmap,
+                                                       0,
+                                                       0,
+                                                       bitmap.getWidth(),
+                                                       bitmap.getHeight(),
+                                                       matrix,
+                                                       true);
+        if (transformed != bitmap)
+        {
+            bitmap.recycle();
+        }
+        return transformed;
+    }
+
+    /**
+     * Thumbnail tier.
+     */
+    private static final class Tier
+    {
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private final File folder;
+        /** Expected size in pixels. */
+        private final int size;
+        /** <code>true</code> to cover size with short edge, <code>false</code> to fit size with long edge. */
+        private final boolean cover;
+
+        /**
+         * Create tier.
+         *
+         * @param folder The tier folder.
+         * @param size The expected size in pixels.
+         * @param cover <code>true</code> to cover size with short edge, <code>false</code> to fit size with long edge.
+         */
+        Tier(File folder, int size, boolean cover)
+        {
+            super();
+
+            this.folder = folder;
+            this.size = size;
+            this.cover = cover;
+        }
+
+        /**
+         * Get the edge compared to tier size.
+         *
+         * @param width The image width.
+         * @param height The image height.
+         * @return The edge to compare.
+         */
+        int getEdge(int width, int height)
+        {
+            return cover ? Math.min(width, height) : Math.max(width, height);
+        }
+    }
+
+    /**
+     * Cached thumbnail.
+     */
+    private static final class Entry
+    {
+        /** Original modification time. */
+        private final long modified;
+        /** Thumbnail path, <code>null</code> if unable to generate. */
+        private final String file;
+        /** Video duration in milliseconds, <code>0</code> if not a video. */
+        private final long duration;
+
+        /**
+         * Create entry.
+         *
+         * @param modified The original modification time.
+         * @param file The thumbnail path, <code>null</code> if unable to generate.
+         */
+        Entry(long modified, String file)
+        {
+            this(modified, file, 0L);
+        }
+
+        /**
+         * Create entry.
+         *
+         * @param modified The original modification time.
+         * @param file The thumbnail path, <code>null</code> if unable to generate.
+         * @param duration The video duration in milliseconds.
+         */
+        Entry(long modified, String file, long duration)
+        {
+            super();
+
+            this.modified = modified;
+            this.file = file;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Sessions thumbnail path index, built from background and persisted in app storage.
+ * <p>
+ * Each session thumbnail is resolved once from the media manifest (image defined in thumb.txt, or first media), and
+ * resolved again only if the session folder or its thumb.txt has been modified since.
+ * </p>
+ */
+final class ThumbnailIndex extends SessionIndex<MediaManifest.Media>
+{
+    private static final int MAGIC = 0x5448554D;
+    private static final int VERSION = 2;
+    /** Session without thumbnail. */
+    private static final MediaManifest.Media NONE = new MediaManifest.Media("", 0L, 0L, MediaManifest.TYPE_IMAGE);
+
+    /**
+     * Get session media from its path.
+     *
+     * @param session The session manifest.
+     * @param path The media path.
+     * @return The media, read from storage if not in session manifest.
+     */
+    private static MediaManifest.Media getMedia(MediaManifest.Session session, String path)
+    {
+        for (final MediaManifest.Media media : session.media)
+        {
+            if (media.path.equals(path))
+            {
+                return media;
+            }
+        }
+        final File file = new File(path);
+        final byte type = MediaManifest.getType(path);
+        return new MediaManifest.Media(path,
+                                       file.length(),
+                                       file.lastModified(),
+                                       type < 0 ? MediaManifest.TYPE_IMAGE : type);
+    }
+
+    private final Runnable listener;
+
+    /**
+     * Create index.
+     *
+     * @param file The index file in app storage.
+     * @param listener Called from background when index has been updated.
+     */
+    ThumbnailIndex(File file, Runnable listener)
+    {
+        super(file, MAGIC, VERSION, NONE);
+
+        this.listener = listener;
+    }
+
+    /**
+     * Resolve session thumbnail (image defined in thumb.txt, or first media).
+     *
+     * @param session The session manifest.
+     * @return The thumbnail media, {@link #NONE} if none.
+     */
+    @Override
+    MediaManifest.Media compute(MediaManifest.Session session)
+    {
+        if (session.thumbnailFile)
+        {
+            final Optional<String> thumbnail = Util.readThumbnailFile(new File(session.folder));
+            if (thumbnail.isPresent())
+            {
+                return getMedia(session, thumbnail.get());
+            }
+        }
+        if (session.media.isEmpty())
+        {
+            return NONE;
+        }
+        return session.media.get(0);
+    }
+
+    @Override
+    MediaManifest.Media read(DataInput input) throws IOException
+    {
+        final String path = input.readUTF();
+        final long size = input.readLong();
+        final long time = input.readLong();
+        final byte type = input.readByte();
+        return path.isEmpty() ? NONE : new MediaManifest.Media(path, size, time, type);
+    }
+
+    @Override
+    void write(DataOutput output, MediaManifest.Media media) throws IOException
+    {
+        output.writeUTF(media.path);
+        output.writeLong(media.size);
+        output.writeLong(media.modified);
+        output.writeByte(media.type);
+    }
+
+    @Override
+    void onUpdated()
+    {
+        listener.run();
+    }
+}
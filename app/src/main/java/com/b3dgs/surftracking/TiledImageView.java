@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zoomable full resolution image view. Only visible tiles are decoded with {@link BitmapRegionDecoder}, at the sample
+ * size matching the current zoom, and kept in a bounded LRU cache. A low resolution preview is drawn under missing
+ * tiles. Images are displayed with their EXIF orientation, fitted and centered.
+ */
+public final class TiledImageView extends View
+{
+    /** Tile size in decoded pixels. */
+    private static final int TILE = 512;
+    /** Maximum zoom, in screen pixels per image pixel. */
+    private static final float MAX_SCALE = 2.0f;
+    /** Tiles cache budget, as a fraction of the heap. */
+    private static final int CACHE_HEAP_FRACTION = 8;
+    private static final int PREVIEW_SIZE_DEFAULT = 2048;
+    /** Wanted tiles range packing: sample size log2 on 4 bits, then first and last tiles on 15 bits each. */
+    private static final int SHIFT_SAMPLE = 60;
+    private static final int SHIFT_FIRST_COLUMN = 45;
+    private static final int SHIFT_FIRST_ROW = 30;
+    private static final int SHIFT_LAST_COLUMN = 15;
+    private static final int SHIFT_LAST_ROW = 0;
+    private static final long MASK_RANGE = 0x7FFFL;
+    /** No wanted tiles. */
+    private static final long WANTED_NONE = -1L;
+
+    /**
+     * Get largest power of two sample lower or equal to the inverse of the scale.
+     *
+     * @param scale The display scale.
+     * @return The sample size.
+     */
+    private static int getSample(float scale)
+    {
+        int sample = 1;
+        while (sample * 2 * scale <= 1.0f)
+        {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private static long getKey(int sample, int column, int row)
+    {
+        return (long) sample << 40 | (long) column << 20 | row;
+    }
+
+    /**
+     * Pack wanted tiles range.
+     *
+     * @param sample The sample size (power of two).
+     * @param firstColumn The first column.
+     * @param firstRow The first row.
+     * @param lastColumn The last column.
+     * @param lastRow The last row.
+     * @return The packed range.
+     */
+    private static long pack(int sample, int firstColumn, int firstRow, int lastColumn, int lastRow)
+    {
+        return (long) Integer.numberOfTrailingZeros(sample) << SHIFT_SAMPLE
+               | (long) firstColumn << SHIFT_FIRST_COLUMN
+               | (long) firstRow << SHIFT_FIRST_ROW
+               | (long) lastColumn << SHIFT_LAST_COLUMN
+               | lastRow;
+    }
+
+    /**
+     * Get packed range value.
+     *
+     * @param range The packed range.
+     * @param shift The value shift.
+     * @return The value.
+     */
+    private static int unpack(long range, int shift)
+    {
+        return (int) (range >>> shift & MASK_RANGE);
+    }
+
+    /**
+     * Get tiles cache budget.
+     *
+     * @return The budget in bytes.
+     */
+    private static int getCacheSize()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / CACHE_HEAP_FRACTION);
+    }
+
+    private final LruCache<Long, Bitmap> tiles = new LruCache<Long, Bitmap>(getCacheSize())
+    {
+        @Override
+        protected int sizeOf(Long key, Bitmap value)
+        {
+            return value.getByteCount();
+        }
+    };
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix base = new Matrix();
+    private final Matrix user = new Matrix();
+    private final Matrix matrix = new Matrix();
+    private final Matrix inverse = new Matrix();
+    private final RectF visible = new RectF();
+    private final RectF bounds = new RectF();
+    private final RectF tile = new RectF();
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+    private ThreadPoolExecutor executor;
+    private BitmapRegionDecoder decoder;
+    private Bitmap preview;
+    private Runnable exitListener;
+    private int imageWidth;
+    private int imageHeight;
+    private int rotation;
+    /** Wanted tiles, packed by {@link #pack(int, int, int, int, int)}, read by decoder. */
+    private volatile long wanted = WANTED_NONE;
+    /** Current image generation, to drop results of previous images. */
+    private volatile int generation;
+
+    /**
+     * Create view.
+     *
+     * @param context The context reference.
+     */
+    public TiledImageView(Context context)
+    {
+        this(context, null);
+    }
+
+    /**
+     * Create view.
+     *
+     * @param context The context reference.
+     * @param attrs The attributes reference.
+     */
+    public TiledImageView(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener()
+        {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector)
+            {
+                zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener()
+        {
+            @Override
+            public boolean onDown(MotionEvent event)
+            {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent first, MotionEvent current, float distanceX, float distanceY)
+            {
+                user.postTranslate(-distanceX, -distanceY);
+                updateMatrix();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent event)
+            {
+                if (exitListener != null)
+                {
+                    exitListener.run();
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Set listener called on double tap, to leave zoom mode.
+     *
+     * @param listener The exit listener.
+     */
+    void setExitListener(Runnable listener)
+    {
+        exitListener = listener;
+    }
+
+    /**
+     * Set image to display. Decoder and preview are prepared from background.
+     *
+     * @param path The image path.
+     */
+    void setImage(String path)
+    {
+        recycle();
+        final int current = generation;
+        final BlockingQueue<Runnable> queue = new LinkedBlockingDeque<Runnable>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean offer(Runnable runnable)
+            {
+                return offerFirst(runnable);
+            }
+        };
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue);
+        final int previewSize = Math.max(Math.max(getWidth(), getHeight()), PREVIEW_SIZE_DEFAULT);
+        executor.execute(() -> open(path, current, previewSize));
+    }
+
+    /**
+     * Release decoder and tiles.
+     */
+    void recycle()
+    {
+        generation++;
+        if (executor != null)
+        {
+            if (decoder != null)
+            {
+                executor.execute(decoder::recycle); // Queued first, then pending tiles are dropped
+            }
+            executor.shutdown();
+            executor = null;
+        }
+        decoder = null;
+        wanted = WANTED_NONE;
+        tiles.evictAll();
+        pending.clear();
+        preview = null;
+        imageWidth = 0;
+        imageHeight = 0;
+        user.reset();
+        invalidate();
+    }
+
+    /**
+     * Open decoder and decode preview, leaving zoom mode on failure. Called from background.
+     *
+     * @param path The image path.
+     * @param current The image generation.
+     * @param previewSize The maximum preview long edge.
+     */
+    private void open(String path, int current, int previewSize)
+    {
+        BitmapRegionDecoder opened = null;
+        try
+        {
+            final ExifReader exif = new ExifReader();
+            final int orientation = exif.read(path) ? exif.getOrientation() : ExifReader.ORIENTATION_NORMAL;
+            opened = BitmapRegionDecoder.newInstance(path, false);
+            final int width = opened.getWidth();
+            final int height = opened.getHeight();
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inSampleSize = 1;
+            while (Math.max(width, height) / options.inSampleSize > previewSize)
+            {
+                options.inSampleSize *= 2;
+            }
+            final Bitmap decoded = opened.decodeRegion(new Rect(0, 0, width, height), options);
+            if (decoded == null)
+            {
+                throw new IOException("Unable to decode preview");
+            }
+            final BitmapRegionDecoder source = opened;
+            post(() ->
+            {
+                if (current != generation)
+                {
+                    source.recycle();
+                    return;
+                }
+                decoder = source;
+                preview = decoded;
+                imageWidth = width;
+                imageHeight = height;
+                rotation = ExifReader.getRotation(orientation);
+                updateBase();
+            });
+        }
+        catch (IOException | RuntimeException | OutOfMemoryError e)
+        {
+            Util.log("Unable to open " + path, e);
+            if (opened != null)
+            {
+                opened.recycle();
+            }
+            exit(current);
+        }
+    }
+
+    /**
+     * Leave zoom mode from UI thread, if image is still the current one.
+     *
+     * @param current The image generation.
+     */
+    private void exit(int current)
+    {
+        post(() ->
+        {
+            if (current == generation && exitListener != null)
+            {
+                exitListener.run();
+            }
+        });
+    }
+
+    /**
+     * Zoom around focus point, bounded between fit and maximum scale.
+     *
+     * @param factor The zoom factor.
+     * @param focusX The focus horizontal location.
+     * @param focusY The focus vertical location.
+     */
+    private void zoom(float factor, float focusX, float focusY)
+    {
+        final float current = matrix.mapRadius(1.0f);
+        final float baseScale = base.mapRadius(1.0f);
+        final float target = Math.max(baseScale, Math.min(MAX_SCALE, current * factor));
+        final float bounded = target / current;
+        user.postScale(bounded, bounded, focusX, focusY);
+        updateMatrix();
+    }
+
+    /**
+     * Fit and center image, rotated by its EXIF orientation.
+     */
+    private void updateBase()
+    {
+        if (imageWidth == 0 || getWidth() == 0 || getHeight() == 0)
+        {
+            return;
+        }
+        final boolean swapped = rotation % 180 != 0;
+        final int displayedWidth = swapped ? imageHeight : imageWidth;
+        final int displayedHeight = swapped ? imageWidth : imageHeight;
+        final float scale = Math.min(getWidth() / (float) displayedWidth, getHeight() / (float) displayedHeight);
+        base.reset();
+        base.postTranslate(-imageWidth / 2.0f, -imageHeight / 2.0f);
+        base.postRotate(rotation);
+        base.postScale(scale, scale);
+        base.postTranslate(getWidth() / 2.0f, getHeight() / 2.0f);
+        user.reset();
+        updateMatrix();
+    }
+
+    /**
+     * Combine base and user transformations, keeping image on screen.
+     */
+    private void updateMatrix()
+    {
+        matrix.set(base);
+        matrix.postConcat(user);
+        bounds.set(0, 0, imageWidth, imageHeight);
+        matrix.mapRect(bounds);
+        final float dx = getCorrection(bounds.left, bounds.right, getWidth());
+        final float dy = getCorrection(bounds.top, bounds.bottom, getHeight());
+        if (dx != 0.0f || dy != 0.0f)
+        {
+            user.postTranslate(dx, dy);
+            matrix.postTranslate(dx, dy);
+        }
+        invalidate();
+    }
+
+    /**
+     * Get translation keeping image edges outside view, or centered if smaller.
+     *
+     * @param start The image start.
+     * @param end The image end.
+     * @param size The view size.
+     * @return The translation correction.
+     */
+    private static float getCorrection(float start, float end, int size)
+    {
+        if (end - start <= size)
+        {
+            return (size - start - end) / 2.0f;
+        }
+        if (start > 0.0f)
+        {
+            return -start;
+        }
+        if (end < size)
+        {
+            return size - end;
+        }
+        return 0.0f;
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        recycle();
+
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight)
+    {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+
+        updateBase();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event)
+    {
+        getParent().requestDisallowInterceptTouchEvent(true);
+        scaleDetector.onTouchEvent(event);
+        if (!scaleDetector.isInProgress())
+        {
+            gestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas)
+    {
+        super.onDraw(canvas);
+
+        if (preview == null || decoder == null)
+        {
+            return;
+        }
+        canvas.save();
+        canvas.concat(matrix);
+        tile.set(0, 0, imageWidth, imageHeight);
+        canvas.drawBitmap(preview, null, tile, paint);
+
+        matrix.invert(inverse);
+        visible.set(0, 0, getWidth(), getHeight());
+        inverse.mapRect(visible);
+        final int sample = getSample(matrix.mapRadius(1.0f));
+        final int size = TILE * sample;
+        final int firstColumn = Math.max(0, (int) visible.left / size);
+        final int firstRow = Math.max(0, (int) visible.top / size);
+        final int lastColumn = Math.min((imageWidth - 1) / size, (int) visible.right / size);
+        final int lastRow = Math.min((imageHeight - 1) / size, (int) visible.bottom / size);
+        wanted = pack(sample, firstColumn, firstRow, lastColumn, lastRow);
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                final long key = getKey(sample, column, row);
+                final Bitmap bitmap = tiles.get(Long.valueOf(key));
+                tile.set(column * size,
+                         row * size,
+                         Math.min(imageWidth, (column + 1) * size),
+                         Math.min(imageHeight, (row + 1) * size));
+                if (bitmap != null)
+                {
+                    canvas.drawBitmap(bitmap, null, tile, paint);
+                }
+                else
+                {
+                    request(key, sample, column, row);
+                }
+            }
+        }
+        canvas.restore();
+    }
+
+    /**
+     * Request tile decoding, dropped if no longer visible when its turn comes. Zoom mode is left if decoding fails.
+     *
+     * @param key The tile key.
+     * @param sample The sample size.
+     * @param column The tile column.
+     * @param row The tile row.
+     */
+    private void request(long key, int sample, int column, int row)
+    {
+        if (executor == null || !pending.add(Long.valueOf(key)))
+        {
+            return;
+        }
+        final int current = generation;
+        final BitmapRegionDecoder source = decoder;
+        final Rect region = new Rect(column * TILE * sample,
+                                     row * TILE * sample,
+                                     Math.min(imageWidth, (column + 1) * TILE * sample),
+                                     Math.min(imageHeight, (row + 1) * TILE * sample));
+        executor.execute(() ->
+        {
+            if (!isWanted(sample, column, row) || current != generation)
+            {
+                pending.remove(Long.valueOf(key));
+                return;
+            }
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inSampleSize = sample;
+            final Bitmap bitmap;
+            try
+            {
+                bitmap = source.decodeRegion(region, options);
+            }
+            catch (RuntimeException | OutOfMemoryError e)
+            {
+                Util.log("Unable to decode tile", e);
+                exit(current);
+                return;
+            }
+            post(() ->
+            {
+                pending.remove(Long.valueOf(key));
+                if (bitmap != null && current == generation)
+                {
+                    tiles.put(Long.valueOf(key), bitmap);
+                    invalidate();
+                }
+            });
+        });
+    }
+
+    private boolean isWanted(int sample, int column, int row)
+    {
+        final long current = wanted;
+        return current != WANTED_NONE
+               && (int) (current >>> SHIFT_SAMPLE) == Integer.numberOfTrailingZeros(sample)
+               && column >= unpack(current, SHIFT_FIRST_COLUMN)
+               && row >= unpack(current, SHIFT_FIRST_ROW)
+               && column <= unpack(current, SHIFT_LAST_COLUMN)
+               && row <= unpack(current, SHIFT_LAST_ROW);
+    }
+}
@@ -22,12 +22,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Locale;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * Utility class.
@@ -35,38 +30,16 @@ import java.util.stream.Collectors;
 final class Util
 {
     /**
-     * Get folder content.
+     * Get the session folder path from session key.
      *
-     * @param folder The folder parent (filter hidden file).
-     * @return The folder content.
-     */
-    public static List<File> list(File folder)
-    {
-        if (folder != null && folder.isDirectory())
-        {
-            final File[] content = folder.listFiles();
-            if (content != null)
-            {
-                return Arrays.stream(content).filter(f -> !f.isHidden()).collect(Collectors.toList());
-            }
-        }
-        return Collections.emptyList();
-    }
-
-    /**
-     * Get the session folder path from session name.
-     *
-     * @param session The session name.
+     * @param session The session key.
      * @return The session folder path.
      */
-    public static String getSessionFolder(String session)
+    public static String getSessionFolder(int session)
     {
-        final String[] split = session.split("-");
-        if (split.length == 3)
-        {
-            return new File(new File(split[0], split[1]), split[2]).getPath();
-        }
-        return new File(new File(split[0], split[1]), split[2] + "-" + split[3]).getPath();
+        final StringBuilder builder = new StringBuilder(13);
+        SessionKey.appendFolder(session, builder);
+        return builder.toString();
     }
 
     /**
@@ -93,34 +66,18 @@ final class Util
     }
 
     /**
-     * Get first image from folder.
-     *
-     * @param folder The session folder.
-     * @return The first image found.
-     */
-    public static Optional<String> getFirstImage(File folder)
-    {
-        return Optional.ofNullable(folder.listFiles()).flatMap(Util::getFirstImage);
-    }
-
-    /**
-     * Get first image from folder.
+     * Format decimal value, without fraction when integer.
      *
-     * @param files The files in folder.
-     * @return The first image found.
+     * @param value The value to format.
+     * @return The formatted value.
      */
-    private static Optional<String> getFirstImage(File[] files)
+    public static String format(double value)
     {
-        Arrays.sort(files);
-        for (File file : files)
+        if (value == Math.rint(value))
         {
-            final String name = file.getName().toLowerCase(Locale.ENGLISH);
-            if (name.endsWith(".jpg") || name.endsWith(".mp4"))
-            {
-                return Optional.of(file.getAbsolutePath());
-            }
+            return String.valueOf((long) value);
         }
-        return Optional.empty();
+        return String.valueOf(value);
     }
 
     /**
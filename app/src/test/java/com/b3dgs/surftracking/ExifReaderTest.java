@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 Byron 3D Games Studio (www.b3dgs.com) Pierre-Alexandre (contact@b3dgs.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.b3dgs.surftracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Test {@link ExifReader} against small sample JPEG files, in both TIFF byte orders.
+ * <ul>
+ * <li>exif_ii.jpg: Intel order, GPS references before coordinates, thumbnail location stored as long.</li>
+ * <li>exif_mm.jpg: Motorola order after a JFIF segment, GPS references after coordinates, thumbnail location
+ * stored as short.</li>
+ * <li>exif_bad_thumbnail.jpg: Intel order, thumbnail length exceeding the EXIF segment.</li>
+ * <li>no_exif.jpg: JFIF only.</li>
+ * </ul>
+ */
+public final class ExifReaderTest
+{
+    private static final double EPSILON = 1E-9;
+
+    /**
+     * Get sample file path.
+     *
+     * @param name The sample name.
+     * @return The sample path.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    private static Path getSample(String name) throws URISyntaxException
+    {
+        return Paths.get(ExifReaderTest.class.getResource(name).toURI());
+    }
+
+    private static long toMillis(int year, int month, int day, int hour, int minute, int second)
+    {
+        return LocalDateTime.of(year, month, day, hour, minute, second).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private ExifReader reader;
+
+    /**
+     * Create reader.
+     */
+    @Before
+    public void setUp()
+    {
+        reader = new ExifReader();
+    }
+
+    /**
+     * Test Intel byte order sample.
+     *
+     * @throws IOException If read error.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    @Test
+    public void testIntelOrder() throws IOException, URISyntaxException
+    {
+        assertTrue(reader.read(getSample("exif_ii.jpg").toString()));
+
+        assertEquals(6, reader.getOrientation());
+        assertEquals(toMillis(2018, 7, 14, 9, 30, 15), reader.getCaptureTime());
+        assertTrue(reader.isLocated());
+        assertEquals(-(33.0 + 51.0 / 60.0 + 54.0 / 3600.0), reader.getLatitude(), EPSILON);
+        assertEquals(151.0 + 12.0 / 60.0 + 36.0 / 3600.0, reader.getLongitude(), EPSILON);
+    }
+
+    /**
+     * Test Motorola byte order sample.
+     *
+     * @throws IOException If read error.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    @Test
+    public void testMotorolaOrder() throws IOException, URISyntaxException
+    {
+        assertTrue(reader.read(getSample("exif_mm.jpg").toString()));
+
+        assertEquals(8, reader.getOrientation());
+        assertEquals(toMillis(2020, 2, 29, 23, 59, 58), reader.getCaptureTime());
+        assertTrue(reader.isLocated());
+        assertEquals(48.0 + 51.0 / 60.0 + 29.5 / 3600.0, reader.getLatitude(), EPSILON);
+        assertEquals(-(2.0 + 21.0 / 60.0 + 0.75 / 3600.0), reader.getLongitude(), EPSILON);
+    }
+
+    /**
+     * Test embedded thumbnail location, stored as long in Intel sample and as short in Motorola sample.
+     *
+     * @throws IOException If read error.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    @Test
+    public void testThumbnail() throws IOException, URISyntaxException
+    {
+        assertThumbnail("exif_ii.jpg", 232L);
+        assertThumbnail("exif_mm.jpg", 250L);
+    }
+
+    /**
+     * Test thumbnail exceeding EXIF segment is ignored, other values being read.
+     *
+     * @throws IOException If read error.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    @Test
+    public void testThumbnailOutside() throws IOException, URISyntaxException
+    {
+        assertTrue(reader.read(getSample("exif_bad_thumbnail.jpg").toString()));
+
+        assertEquals(ExifReader.NONE, reader.getThumbnailOffset());
+        assertEquals(0, reader.getThumbnailLength());
+        assertTrue(reader.isLocated());
+    }
+
+    /**
+     * Test file without EXIF, after a file with EXIF to ensure values are reset.
+     *
+     * @throws IOException If read error.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    @Test
+    public void testNoExif() throws IOException, URISyntaxException
+    {
+        assertTrue(reader.read(getSample("exif_ii.jpg").toString()));
+        assertFalse(reader.read(getSample("no_exif.jpg").toString()));
+
+        assertEquals(ExifReader.ORIENTATION_NORMAL, reader.getOrientation());
+        assertEquals(ExifReader.NONE, reader.getCaptureTime());
+        assertFalse(reader.isLocated());
+        assertEquals(ExifReader.NONE, reader.getThumbnailOffset());
+        assertEquals(0, reader.getThumbnailLength());
+    }
+
+    /**
+     * Test rotation from orientation.
+     */
+    @Test
+    public void testRotation()
+    {
+        assertEquals(0, ExifReader.getRotation(ExifReader.ORIENTATION_NORMAL));
+        assertEquals(180, ExifReader.getRotation(3));
+        assertEquals(90, ExifReader.getRotation(6));
+        assertEquals(270, ExifReader.getRotation(8));
+    }
+
+    /**
+     * Check thumbnail location points to the embedded JPEG.
+     *
+     * @param name The sample name.
+     * @param offset The expected thumbnail offset.
+     * @throws IOException If read error.
+     * @throws URISyntaxException If invalid sample location.
+     */
+    private void assertThumbnail(String name, long offset) throws IOException, URISyntaxException
+    {
+        final Path sample = getSample(name);
+        assertTrue(reader.read(sample.toString()));
+        assertEquals(offset, reader.getThumbnailOffset());
+        assertEquals(9, reader.getThumbnailLength());
+
+        final byte[] data = Files.readAllBytes(sample);
+        assertEquals((byte) 0xFF, data[(int) offset]);
+        assertEquals((byte) 0xD8, data[(int) offset + 1]);
+    }
+}